@@ -0,0 +1,66 @@
+package com.academy.springwebfluxessentials.benchmark;
+
+import com.academy.springwebfluxessentials.codec.AnimeJsonEncoder;
+import com.academy.springwebfluxessentials.domain.Anime;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.Encoder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collections;
+import java.util.List;
+
+@State(Scope.Benchmark)
+@Fork(1)
+public class AnimeCodecBenchmark {
+    private static final ResolvableType ANIME_TYPE = ResolvableType.forClass(Anime.class);
+
+    @Param({"1", "1000"})
+    private int listSize;
+
+    @Param({"jackson", "anime"})
+    private String codec;
+
+    private final DataBufferFactory bufferFactory = new NettyDataBufferFactory(PooledByteBufAllocator.DEFAULT);
+    private Encoder<? super Anime> encoder;
+    private List<Anime> animes;
+
+    @Setup
+    public void setUp() {
+        encoder = "anime".equals(codec)
+                ? new AnimeJsonEncoder()
+                : new Jackson2JsonEncoder(Jackson2ObjectMapperBuilder.json().build());
+        animes = BenchmarkData.animes(listSize);
+    }
+
+    @Benchmark
+    public long encodeList() {
+        return written(encoder.encode(Flux.fromIterable(animes), bufferFactory, ANIME_TYPE, MediaType.APPLICATION_JSON, Collections.emptyMap()));
+    }
+
+    @Benchmark
+    public long encodeSingle() {
+        return written(encoder.encode(Mono.just(animes.get(0)), bufferFactory, ANIME_TYPE, MediaType.APPLICATION_JSON, Collections.emptyMap()));
+    }
+
+    // pooled buffers go back to the allocator, otherwise the gc profiler measures a leak
+    private long written(Flux<DataBuffer> buffers) {
+        return buffers
+                .map(buffer -> {
+                    var count = buffer.readableByteCount();
+                    DataBufferUtils.release(buffer);
+                    return (long) count;
+                })
+                .reduce(0L, Long::sum)
+                .block();
+    }
+}
@@ -0,0 +1,47 @@
+package com.academy.springwebfluxessentials.benchmark;
+
+import com.academy.springwebfluxessentials.config.AnimeProperties;
+import com.academy.springwebfluxessentials.domain.Anime;
+import com.academy.springwebfluxessentials.repository.AnimeRepository;
+import com.academy.springwebfluxessentials.service.AnimeCache;
+import com.academy.springwebfluxessentials.service.AnimeLoader;
+import com.academy.springwebfluxessentials.service.AnimeService;
+import com.academy.springwebfluxessentials.service.AnimeWriteBehind;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+@State(Scope.Benchmark)
+@Fork(1)
+public class AnimeServiceBenchmark {
+    @Param({"1000"})
+    private int catalogSize;
+
+    @Param({"true", "false"})
+    private boolean cache;
+
+    private AnimeService service;
+
+    @Setup
+    public void setUp() {
+        var properties = new AnimeProperties();
+        properties.getCache().setEnabled(cache);
+        // the window only adds latency against an in-memory map, measure the lookup path itself
+        properties.getBatch().setEnabled(false);
+
+        AnimeRepository repository = InMemoryAnimeRepository.create(BenchmarkData.animes(catalogSize));
+        service = new AnimeService(repository, properties, new AnimeCache(properties), new AnimeLoader(repository, properties), event -> { },
+                new AnimeWriteBehind(repository, properties, new AnimeCache(properties), event -> { }));
+    }
+
+    @Benchmark
+    public Anime findById() {
+        return service.findById(ThreadLocalRandom.current().nextInt(1, catalogSize + 1)).block();
+    }
+
+    @Benchmark
+    public List<Anime> findAll() {
+        return service.findAll().collectList().block();
+    }
+}
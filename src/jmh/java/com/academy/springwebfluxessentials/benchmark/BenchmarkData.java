@@ -0,0 +1,18 @@
+package com.academy.springwebfluxessentials.benchmark;
+
+import com.academy.springwebfluxessentials.domain.Anime;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+final class BenchmarkData {
+    private BenchmarkData() {
+    }
+
+    static List<Anime> animes(int size) {
+        return IntStream.rangeClosed(1, size)
+                .mapToObj(id -> Anime.builder().id(id).name("Anime \"" + id + "\" - season " + (id % 7)).build())
+                .collect(Collectors.toList());
+    }
+}
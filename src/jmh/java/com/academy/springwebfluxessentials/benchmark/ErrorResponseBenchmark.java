@@ -0,0 +1,44 @@
+package com.academy.springwebfluxessentials.benchmark;
+
+import com.academy.springwebfluxessentials.exception.CustomAttributes;
+import com.academy.springwebfluxessentials.exception.GlobalExceptionHandler;
+import com.academy.springwebfluxessentials.exception.StacklessResponseStatusException;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.autoconfigure.web.ResourceProperties;
+import org.springframework.context.support.StaticApplicationContext;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ResponseStatusException;
+
+@State(Scope.Benchmark)
+@Fork(1)
+public class ErrorResponseBenchmark {
+    @Param({"false", "true"})
+    private boolean trace;
+
+    // the stackless exception AnimeService raises takes the cached fast path unless trace is on
+    @Param({"false", "true"})
+    private boolean stackless;
+
+    private GlobalExceptionHandler handler;
+    private String uri;
+
+    @Setup
+    public void setUp() throws Exception {
+        handler = new GlobalExceptionHandler(new CustomAttributes(), new ResourceProperties(), new StaticApplicationContext(), ServerCodecConfigurer.create());
+        handler.afterPropertiesSet();
+        uri = trace ? "/animes/404?trace=true" : "/animes/404";
+    }
+
+    @Benchmark
+    public HttpStatus notFound() {
+        var exchange = MockServerWebExchange.from(MockServerHttpRequest.get(uri).build());
+        var error = stackless
+                ? new StacklessResponseStatusException(HttpStatus.NOT_FOUND, "Anime not found")
+                : new ResponseStatusException(HttpStatus.NOT_FOUND, "Anime not found");
+        handler.handle(exchange, error).block();
+        return exchange.getResponse().getStatusCode();
+    }
+}
@@ -0,0 +1,247 @@
+package com.academy.springwebfluxessentials.benchmark;
+
+import com.academy.springwebfluxessentials.domain.Anime;
+import com.academy.springwebfluxessentials.domain.AnimeCatalogVersion;
+import com.academy.springwebfluxessentials.repository.AnimeRepository;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.stream.IntStream;
+
+// stand-in for the R2DBC repository backed by a sorted map; it implements the whole interface,
+// so a query added to AnimeRepository breaks the benchmark build instead of a running benchmark
+final class InMemoryAnimeRepository implements AnimeRepository {
+    private final NavigableMap<Integer, Anime> rows = new ConcurrentSkipListMap<>();
+    private final AtomicInteger lastId = new AtomicInteger();
+    private final AtomicLong catalogVersion = new AtomicLong(1);
+
+    private InMemoryAnimeRepository() {
+    }
+
+    static AnimeRepository create(List<Anime> animes) {
+        var repository = new InMemoryAnimeRepository();
+        animes.forEach(anime -> repository.put(anime.getId(), anime.getName()));
+        repository.syncIdSequence().block();
+        return repository;
+    }
+
+    @Override
+    public Mono<Anime> findById(int id) {
+        return Mono.justOrEmpty(rows.get(id));
+    }
+
+    @Override
+    public Mono<Anime> findById(Integer id) {
+        return findById(id.intValue());
+    }
+
+    @Override
+    public Mono<Anime> findById(Publisher<Integer> id) {
+        return Mono.from(id).flatMap(this::findById);
+    }
+
+    @Override
+    public Flux<Anime> findAllByIds(Integer[] ids) {
+        return Flux.fromStream(Arrays.stream(ids).map(rows::get).filter(Objects::nonNull));
+    }
+
+    @Override
+    public Flux<Anime> findAllById(Iterable<Integer> ids) {
+        return Flux.fromIterable(ids).flatMap(id -> Mono.justOrEmpty(rows.get(id)));
+    }
+
+    @Override
+    public Flux<Anime> findAllById(Publisher<Integer> ids) {
+        return Flux.from(ids).flatMap(id -> Mono.justOrEmpty(rows.get(id)));
+    }
+
+    @Override
+    public Flux<Anime> findAll() {
+        return Flux.fromIterable(rows.values());
+    }
+
+    @Override
+    public Flux<Anime> findPage(int after, int limit) {
+        return Flux.fromIterable(rows.tailMap(after, false).values()).take(limit);
+    }
+
+    @Override
+    public Flux<Anime> search(String prefixPattern, String term, int limit) {
+        var prefix = prefixPattern.substring(0, prefixPattern.length() - 1);
+        var needle = term.toLowerCase(Locale.ROOT);
+        return Flux.fromIterable(rows.values())
+                .filter(anime -> anime.getName().toLowerCase(Locale.ROOT).contains(needle))
+                .sort((a, b) -> Boolean.compare(b.getName().toLowerCase(Locale.ROOT).startsWith(prefix),
+                        a.getName().toLowerCase(Locale.ROOT).startsWith(prefix)))
+                .take(limit);
+    }
+
+    @Override
+    public Mono<Boolean> existsById(Integer id) {
+        return Mono.fromSupplier(() -> rows.containsKey(id));
+    }
+
+    @Override
+    public Mono<Boolean> existsById(Publisher<Integer> id) {
+        return Mono.from(id).flatMap(this::existsById);
+    }
+
+    @Override
+    public Mono<Long> count() {
+        return Mono.fromSupplier(() -> (long) rows.size());
+    }
+
+    // like the R2DBC template, the saved entity gets its id and version written back
+    @Override
+    public <S extends Anime> Mono<S> save(S anime) {
+        return Mono.fromSupplier(() -> {
+            var row = put(anime.getId() == null ? lastId.incrementAndGet() : anime.getId(), anime.getName());
+            anime.setId(row.getId());
+            anime.setVersion(row.getVersion());
+            anime.setUpdatedAt(row.getUpdatedAt());
+            return anime;
+        });
+    }
+
+    @Override
+    public <S extends Anime> Flux<S> saveAll(Iterable<S> animes) {
+        return Flux.fromIterable(animes).concatMap(this::save);
+    }
+
+    @Override
+    public <S extends Anime> Flux<S> saveAll(Publisher<S> animes) {
+        return Flux.from(animes).concatMap(this::save);
+    }
+
+    @Override
+    public Mono<Integer> updateName(int id, String name) {
+        return Mono.fromSupplier(() -> rows.containsKey(id) ? affected(put(id, name)) : 0);
+    }
+
+    @Override
+    public Mono<Integer> updateNameIfVersion(int id, String name, long version) {
+        return Mono.fromSupplier(() -> {
+            var row = rows.get(id);
+            return row != null && row.getVersion() == version ? affected(put(id, name)) : 0;
+        });
+    }
+
+    @Override
+    public Mono<Integer> removeById(int id) {
+        return Mono.fromSupplier(() -> affected(remove(id)));
+    }
+
+    @Override
+    public Mono<Void> deleteById(Integer id) {
+        return removeById(id).then();
+    }
+
+    @Override
+    public Mono<Void> deleteById(Publisher<Integer> id) {
+        return Mono.from(id).flatMap(this::deleteById);
+    }
+
+    @Override
+    public Mono<Void> delete(Anime anime) {
+        return deleteById(anime.getId());
+    }
+
+    @Override
+    public Mono<Void> deleteAll(Iterable<? extends Anime> animes) {
+        return Flux.fromIterable(animes).concatMap(this::delete).then();
+    }
+
+    @Override
+    public Mono<Void> deleteAll(Publisher<? extends Anime> animes) {
+        return Flux.from(animes).concatMap(this::delete).then();
+    }
+
+    @Override
+    public Mono<Void> deleteAll() {
+        return Mono.fromRunnable(() -> {
+            rows.clear();
+            catalogVersion.incrementAndGet();
+        });
+    }
+
+    @Override
+    public Flux<Anime> streamAll(int fetchSize) {
+        return findAll();
+    }
+
+    @Override
+    public <T> Flux<T> streamRows(int fetchSize, BiFunction<Integer, String, T> mapper) {
+        return Flux.fromIterable(rows.values()).map(anime -> mapper.apply(anime.getId(), anime.getName()));
+    }
+
+    @Override
+    public Flux<Integer> insertNames(String[] names) {
+        return Flux.fromArray(names).map(name -> put(lastId.incrementAndGet(), name).getId());
+    }
+
+    @Override
+    public Flux<Integer> updateNames(Integer[] ids, String[] names) {
+        return Flux.fromStream(IntStream.range(0, ids.length).boxed())
+                .filter(i -> rows.containsKey(ids[i]))
+                .map(i -> put(ids[i], names[i]).getId());
+    }
+
+    @Override
+    public Flux<Integer> removeAllByIds(Integer[] ids) {
+        return Flux.fromArray(ids).flatMap(id -> Mono.justOrEmpty(remove(id))).map(Anime::getId);
+    }
+
+    @Override
+    public Mono<Integer> upsertAll(Integer[] ids, String[] names) {
+        return Mono.fromSupplier(() -> {
+            IntStream.range(0, ids.length).forEach(i -> put(ids[i], names[i]));
+            return ids.length;
+        });
+    }
+
+    @Override
+    public Mono<AnimeCatalogVersion> findCatalogVersion() {
+        return Mono.fromSupplier(() -> new AnimeCatalogVersion(catalogVersion.get(), Instant.EPOCH));
+    }
+
+    @Override
+    public Mono<Void> syncIdSequence() {
+        return Mono.fromRunnable(() -> lastId.accumulateAndGet(rows.isEmpty() ? 0 : rows.lastKey(), Math::max));
+    }
+
+    private Anime put(int id, String name) {
+        var row = rows.get(id);
+        var anime = Anime.builder()
+                .id(id)
+                .name(name)
+                .version(row == null ? 0 : row.getVersion() + 1)
+                .updatedAt(Instant.EPOCH)
+                .build();
+        rows.put(id, anime);
+        catalogVersion.incrementAndGet();
+        return anime;
+    }
+
+    private Anime remove(int id) {
+        var row = rows.remove(id);
+        if (row != null) {
+            catalogVersion.incrementAndGet();
+        }
+        return row;
+    }
+
+    private static int affected(Anime row) {
+        return row == null ? 0 : 1;
+    }
+}
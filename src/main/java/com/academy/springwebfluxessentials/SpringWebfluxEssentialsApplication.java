@@ -3,6 +3,7 @@ package com.academy.springwebfluxessentials;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import reactor.blockhound.BlockHound;
+import reactor.core.scheduler.Schedulers;
 
 @SpringBootApplication
 public class SpringWebfluxEssentialsApplication {
@@ -11,6 +12,8 @@ public class SpringWebfluxEssentialsApplication {
 //    }
 
     public static void main(String[] args) {
+        // before any scheduler is created, so their executors report queue depth and task timings
+        Schedulers.enableMetrics();
         SpringApplication.run(SpringWebfluxEssentialsApplication.class, args);
     }
 
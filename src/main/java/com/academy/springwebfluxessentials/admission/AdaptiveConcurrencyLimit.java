@@ -0,0 +1,67 @@
+package com.academy.springwebfluxessentials.admission;
+
+import com.academy.springwebfluxessentials.config.AnimeProperties;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+// AIMD: grows by one per limit's worth of fast responses, shrinks by backoffRatio when responses get slow
+public class AdaptiveConcurrencyLimit {
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyThresholdNanos;
+    private final double backoffRatio;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private volatile double limit;
+    private long lastDecreaseNanos;
+
+    public AdaptiveConcurrencyLimit(AnimeProperties.Limit config) {
+        this.minLimit = config.getMinLimit();
+        this.maxLimit = config.getMaxLimit();
+        this.latencyThresholdNanos = config.getLatencyThreshold().toNanos();
+        this.backoffRatio = config.getBackoffRatio();
+        this.limit = Math.max(minLimit, Math.min(maxLimit, config.getInitialLimit()));
+        this.lastDecreaseNanos = System.nanoTime() - latencyThresholdNanos;
+    }
+
+    public boolean tryAcquire() {
+        while (true) {
+            var current = inFlight.get();
+            if (current >= (int) limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    // cancelled requests give their slot back without telling us anything about latency
+    public void release(long latencyNanos, boolean measured) {
+        var used = inFlight.getAndDecrement();
+        if (!measured) {
+            return;
+        }
+        synchronized (this) {
+            var now = System.nanoTime();
+            if (latencyNanos > latencyThresholdNanos) {
+                // requests already in flight when we backed off come back slow as well, count that once
+                if (now - lastDecreaseNanos >= latencyThresholdNanos) {
+                    limit = Math.max(minLimit, limit * backoffRatio);
+                    lastDecreaseNanos = now;
+                }
+            } else if (used * 2 >= limit) {
+                // only while the limit is actually in use, an idle route must not inflate it
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+        }
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+}
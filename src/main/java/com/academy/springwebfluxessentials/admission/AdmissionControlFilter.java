@@ -0,0 +1,134 @@
+package com.academy.springwebfluxessentials.admission;
+
+import com.academy.springwebfluxessentials.config.AnimeProperties;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// sheds /animes requests beyond what the backend currently sustains instead of letting them queue in the pipelines;
+// every route and method has its own limit, so a slow endpoint only sheds its own traffic
+@Component
+@Order(20)
+public class AdmissionControlFilter implements WebFilter, MeterBinder {
+    private static final String ROOT = "/animes";
+    // path segments the controller maps literally, anything else under /animes is an id
+    private static final Set<String> SUB_RESOURCES = Set.of("search", "lookup", "bulk", "export", "import", "changes");
+
+    private final AnimeProperties.Admission config;
+    private final Map<String, Route> routes = new ConcurrentHashMap<>();
+    private final String retryAfter;
+    private volatile MeterRegistry registry;
+
+    public AdmissionControlFilter(AnimeProperties properties) {
+        this.config = properties.getAdmission();
+        this.retryAfter = String.valueOf(Math.max(1, config.getRetryAfter().toSeconds()));
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        var request = exchange.getRequest();
+        var path = request.getPath().pathWithinApplication().value();
+        if (!config.isEnabled() || !(path.equals(ROOT) || path.startsWith(ROOT + "/")) || config.getExemptPaths().contains(path)) {
+            return chain.filter(exchange);
+        }
+
+        var method = request.getMethod() == HttpMethod.HEAD ? HttpMethod.GET.name() : request.getMethodValue();
+        var read = HttpMethod.GET.matches(method) || config.getReadPaths().contains(path);
+        var route = routes.computeIfAbsent(method + " " + template(path), key -> newRoute(key, read));
+        return Mono.defer(() -> {
+            if (!route.limit.tryAcquire()) {
+                route.rejected.increment();
+                var response = exchange.getResponse();
+                response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+                response.getHeaders().set(HttpHeaders.RETRY_AFTER, retryAfter);
+                return response.setComplete();
+            }
+            // latency is time to first byte, a streamed listing is not slow just because the catalog is long
+            var start = System.nanoTime();
+            var firstByte = new AtomicLong();
+            exchange.getResponse().beforeCommit(() -> {
+                firstByte.compareAndSet(0, System.nanoTime() - start);
+                return Mono.empty();
+            });
+            return chain.filter(exchange)
+                    .doFinally(signal -> {
+                        var latency = firstByte.get();
+                        route.limit.release(latency > 0 ? latency : System.nanoTime() - start, signal != SignalType.CANCEL);
+                    });
+        });
+    }
+
+    // one key per controller mapping: /animes, /animes/search, ..., /animes/{id}
+    private static String template(String path) {
+        if (path.length() <= ROOT.length() + 1) {
+            return ROOT;
+        }
+        var end = path.indexOf('/', ROOT.length() + 1);
+        var segment = path.substring(ROOT.length() + 1, end < 0 ? path.length() : end);
+        return ROOT + "/" + (SUB_RESOURCES.contains(segment) ? segment : "{id}");
+    }
+
+    private Route newRoute(String key, boolean read) {
+        var route = new Route(key, read ? "read" : "write", new AdaptiveConcurrencyLimit(read ? config.getRead() : config.getWrite()));
+        var current = registry;
+        if (current != null) {
+            route.bindTo(current);
+        }
+        return route;
+    }
+
+    // routes seen before the registry was bound get their meters now, later ones when they are created
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        this.registry = registry;
+        routes.values().forEach(route -> route.bindTo(registry));
+    }
+
+    // the current limit of a route like "GET /animes/{id}", -1 before its first request
+    int limitOf(String route) {
+        var found = routes.get(route);
+        return found == null ? -1 : found.limit.getLimit();
+    }
+
+    @RequiredArgsConstructor
+    private static class Route {
+        private final String key;
+        private final String budget;
+        private final AdaptiveConcurrencyLimit limit;
+        private final LongAdder rejected = new LongAdder();
+
+        void bindTo(MeterRegistry registry) {
+            var tags = Tags.of("route", key, "budget", budget);
+            Gauge.builder("anime.admission.limit", limit, AdaptiveConcurrencyLimit::getLimit)
+                    .description("Concurrent requests currently admitted per route")
+                    .tags(tags)
+                    .register(registry);
+            Gauge.builder("anime.admission.inflight", limit, AdaptiveConcurrencyLimit::getInFlight)
+                    .tags(tags)
+                    .register(registry);
+            FunctionCounter.builder("anime.admission.rejected", rejected, LongAdder::sum)
+                    .description("Requests answered with 503 by admission control")
+                    .tags(tags)
+                    .register(registry);
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.academy.springwebfluxessentials.codec;
+
+import com.academy.springwebfluxessentials.config.WebFluxConfig;
+import com.academy.springwebfluxessentials.domain.Anime;
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.AbstractEncoder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// writes Anime without reflection, straight into the response buffers; the output matches the application ObjectMapper
+public class AnimeJsonEncoder extends AbstractEncoder<Anime> {
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ID = "{\"id\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NAME = ",\"name\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] VERSION = ",\"version\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] UPDATED_AT = ",\"updatedAt\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NULL = "null".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] EMPTY_ARRAY = "[]".getBytes(StandardCharsets.US_ASCII);
+
+    public AnimeJsonEncoder() {
+        super(MediaType.APPLICATION_JSON, WebFluxConfig.APPLICATION_NDJSON, MediaType.APPLICATION_STREAM_JSON);
+    }
+
+    @Override
+    public boolean canEncode(ResolvableType elementType, MimeType mimeType) {
+        return Anime.class.equals(elementType.toClass()) && super.canEncode(elementType, mimeType);
+    }
+
+    @Override
+    public Flux<DataBuffer> encode(Publisher<? extends Anime> input, DataBufferFactory bufferFactory,
+                                   ResolvableType elementType, MimeType mimeType, Map<String, Object> hints) {
+        if (input instanceof Mono) {
+            return Mono.from(input)
+                    .map(anime -> encodeValue(anime, bufferFactory, elementType, mimeType, hints))
+                    .flux();
+        }
+        if (isStreaming(mimeType)) {
+            return Flux.from(input).map(anime -> {
+                var buffer = allocate(bufferFactory, anime, 1);
+                write(buffer, anime);
+                return buffer.write((byte) '\n');
+            });
+        }
+        // one buffer per element, the array is never held in memory as a whole
+        var first = new AtomicBoolean(true);
+        return Flux.from(input)
+                .map(anime -> {
+                    var buffer = allocate(bufferFactory, anime, 1);
+                    buffer.write(first.getAndSet(false) ? (byte) '[' : (byte) ',');
+                    write(buffer, anime);
+                    return buffer;
+                })
+                .concatWith(Mono.fromSupplier(() -> first.get()
+                        ? bufferFactory.wrap(EMPTY_ARRAY)
+                        : bufferFactory.allocateBuffer(1).write((byte) ']')));
+    }
+
+    @Override
+    public DataBuffer encodeValue(Anime anime, DataBufferFactory bufferFactory, ResolvableType valueType,
+                                  MimeType mimeType, Map<String, Object> hints) {
+        var buffer = allocate(bufferFactory, anime, 0);
+        write(buffer, anime);
+        return buffer;
+    }
+
+    private static boolean isStreaming(MimeType mimeType) {
+        return mimeType != null && (WebFluxConfig.APPLICATION_NDJSON.equalsTypeAndSubtype(mimeType)
+                || MediaType.APPLICATION_STREAM_JSON.equalsTypeAndSubtype(mimeType));
+    }
+
+    // sized for the ascii case, the buffer grows on its own for anything longer
+    private static DataBuffer allocate(DataBufferFactory bufferFactory, Anime anime, int extra) {
+        var name = anime.getName();
+        return bufferFactory.allocateBuffer(96 + extra + (name == null ? 0 : name.length()));
+    }
+
+    static void write(DataBuffer buffer, Anime anime) {
+        buffer.write(ID);
+        if (anime.getId() == null) {
+            buffer.write(NULL);
+        } else {
+            writeNumber(buffer, anime.getId());
+        }
+        buffer.write(NAME);
+        writeString(buffer, anime.getName());
+        // same as the @JsonInclude(NON_NULL) on these two fields
+        if (anime.getVersion() != null) {
+            buffer.write(VERSION);
+            writeNumber(buffer, anime.getVersion());
+        }
+        if (anime.getUpdatedAt() != null) {
+            buffer.write(UPDATED_AT);
+            // Instant.toString is the ISO_INSTANT format Jackson writes with timestamps disabled
+            writeString(buffer, anime.getUpdatedAt().toString());
+        }
+        buffer.write((byte) '}');
+    }
+
+    private static void writeNumber(DataBuffer buffer, long value) {
+        if (value < 0) {
+            if (value == Long.MIN_VALUE) {
+                buffer.write(Long.toString(value).getBytes(StandardCharsets.US_ASCII));
+                return;
+            }
+            buffer.write((byte) '-');
+            value = -value;
+        }
+        var divisor = 1L;
+        while (value / divisor >= 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            buffer.write((byte) ('0' + value / divisor % 10));
+        }
+    }
+
+    private static void writeString(DataBuffer buffer, String value) {
+        if (value == null) {
+            buffer.write(NULL);
+            return;
+        }
+        buffer.write((byte) '"');
+        var length = value.length();
+        var plain = 0;
+        // fast path: printable ascii without quotes or backslashes goes out byte for byte
+        while (plain < length) {
+            var c = value.charAt(plain);
+            if (c < 0x20 || c >= 0x80 || c == '"' || c == '\\') {
+                break;
+            }
+            buffer.write((byte) c);
+            plain++;
+        }
+        if (plain < length) {
+            writeEscaped(buffer, value, plain);
+        }
+        buffer.write((byte) '"');
+    }
+
+    private static void writeEscaped(DataBuffer buffer, String value, int from) {
+        for (var i = from; i < value.length(); i++) {
+            var c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                buffer.write((byte) '\\').write((byte) c);
+            } else if (c < 0x20) {
+                writeControl(buffer, c);
+            } else if (c < 0x80) {
+                buffer.write((byte) c);
+            } else if (c < 0x800) {
+                buffer.write((byte) (0xC0 | c >> 6)).write((byte) (0x80 | c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                var codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer.write((byte) (0xF0 | codePoint >> 18))
+                        .write((byte) (0x80 | codePoint >> 12 & 0x3F))
+                        .write((byte) (0x80 | codePoint >> 6 & 0x3F))
+                        .write((byte) (0x80 | codePoint & 0x3F));
+            } else {
+                buffer.write((byte) (0xE0 | c >> 12))
+                        .write((byte) (0x80 | c >> 6 & 0x3F))
+                        .write((byte) (0x80 | c & 0x3F));
+            }
+        }
+    }
+
+    private static void writeControl(DataBuffer buffer, char c) {
+        buffer.write((byte) '\\');
+        switch (c) {
+            case '\b':
+                buffer.write((byte) 'b');
+                break;
+            case '\t':
+                buffer.write((byte) 't');
+                break;
+            case '\n':
+                buffer.write((byte) 'n');
+                break;
+            case '\f':
+                buffer.write((byte) 'f');
+                break;
+            case '\r':
+                buffer.write((byte) 'r');
+                break;
+            default:
+                buffer.write((byte) 'u').write((byte) '0').write((byte) '0')
+                        .write(HEX[c >> 4]).write(HEX[c & 0xF]);
+        }
+    }
+}
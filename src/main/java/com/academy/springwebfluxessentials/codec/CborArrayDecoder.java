@@ -0,0 +1,34 @@
+package com.academy.springwebfluxessentials.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.cbor.Jackson2CborDecoder;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.Map;
+
+// the decoding side of CborArrayEncoder: only application/cbor, and a Flux is read from one array
+public class CborArrayDecoder extends Jackson2CborDecoder {
+
+    public CborArrayDecoder(ObjectMapper mapper) {
+        super(mapper, MediaType.APPLICATION_CBOR);
+    }
+
+    @Override
+    public boolean canDecode(ResolvableType elementType, MimeType mimeType) {
+        return mimeType != null && MediaType.APPLICATION_CBOR.equalsTypeAndSubtype(mimeType) && super.canDecode(elementType, mimeType);
+    }
+
+    @Override
+    public Flux<Object> decode(Publisher<DataBuffer> input, ResolvableType elementType,
+                               MimeType mimeType, Map<String, Object> hints) {
+        var listType = ResolvableType.forClassWithGenerics(List.class, elementType);
+        return decodeToMono(input, listType, mimeType, hints)
+                .flatMapIterable(values -> (List<?>) values);
+    }
+}
@@ -0,0 +1,44 @@
+package com.academy.springwebfluxessentials.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.cbor.Jackson2CborEncoder;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+
+// Spring 5.2's CBOR encoder claims bodies without a content type and cannot encode a stream at all;
+// this one only answers for application/cbor and writes a Flux as a single array
+public class CborArrayEncoder extends Jackson2CborEncoder {
+
+    public CborArrayEncoder(ObjectMapper mapper) {
+        super(mapper, MediaType.APPLICATION_CBOR);
+    }
+
+    @Override
+    public boolean canEncode(ResolvableType elementType, MimeType mimeType) {
+        return mimeType != null && MediaType.APPLICATION_CBOR.equalsTypeAndSubtype(mimeType) && super.canEncode(elementType, mimeType);
+    }
+
+    @Override
+    public Flux<DataBuffer> encode(Publisher<?> input, DataBufferFactory bufferFactory,
+                                   ResolvableType elementType, MimeType mimeType, Map<String, Object> hints) {
+        if (input instanceof Mono) {
+            return Mono.from(input)
+                    .map(value -> encodeValue(value, bufferFactory, elementType, mimeType, hints))
+                    .flux();
+        }
+        var listType = ResolvableType.forClassWithGenerics(List.class, elementType);
+        return Flux.from(input)
+                .collectList()
+                .map(values -> encodeValue(values, bufferFactory, listType, mimeType, hints))
+                .flux();
+    }
+}
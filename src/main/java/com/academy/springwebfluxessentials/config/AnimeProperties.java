@@ -0,0 +1,200 @@
+package com.academy.springwebfluxessentials.config;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "anime")
+public class AnimeProperties {
+    private final Listing listing = new Listing();
+    private final Cache cache = new Cache();
+    private final Batch batch = new Batch();
+    private final Bulk bulk = new Bulk();
+    private final Metrics metrics = new Metrics();
+    private final Pool pool = new Pool();
+    private final Search search = new Search();
+    private final Snapshot snapshot = new Snapshot();
+    private final Admission admission = new Admission();
+    private final WriteBehind writeBehind = new WriteBehind();
+    private final Replica replica = new Replica();
+    private final Changes changes = new Changes();
+    private final ServerTiming serverTiming = new ServerTiming();
+    private final Deadlines deadlines = new Deadlines();
+    private final Hedging hedging = new Hedging();
+
+    @Data
+    public static class Listing {
+        // rows pulled from Postgres per round trip while streaming the unpaged catalog
+        private int fetchSize = 250;
+        // page size for ?after= requests that leave out limit
+        private int defaultPageSize = 100;
+        private int maxPageSize = 500;
+        // ids accepted by one multi-get request
+        private int maxIds = 500;
+    }
+
+    @Data
+    public static class Cache {
+        private boolean enabled = true;
+        private long maximumSize = 10_000;
+        private Duration ttl = Duration.ofMinutes(5);
+        // how long a "not found" answer is remembered
+        private Duration negativeTtl = Duration.ofSeconds(10);
+    }
+
+    @Data
+    public static class Batch {
+        private boolean enabled = true;
+        // how long a lookup waits for others to share its query
+        private Duration window = Duration.ofMillis(2);
+        private int maxSize = 100;
+    }
+
+    @Data
+    public static class Bulk {
+        // operations read from the request before they are turned into statements
+        private int chunkSize = 1000;
+    }
+
+    @Data
+    public static class Metrics {
+        // repository calls slower than this are logged, replacing the r2dbc DEBUG statement log
+        private Duration slowQueryThreshold = Duration.ofMillis(200);
+        private double slowQuerySampleRate = 1.0;
+    }
+
+    @Data
+    public static class Pool {
+        // also the number of connections opened before the server takes traffic
+        private int initialSize = 10;
+        private int maxSize = 20;
+        private Duration maxAcquireTime = Duration.ofSeconds(5);
+        private Duration maxCreateConnectionTime = Duration.ofSeconds(5);
+        private Duration maxIdleTime = Duration.ofMinutes(30);
+        private Duration maxLifeTime = Duration.ofHours(1);
+        private String validationQuery = "SELECT 1";
+        private Duration warmupTimeout = Duration.ofSeconds(10);
+    }
+
+    @Data
+    public static class Search {
+        private int defaultLimit = 20;
+        private int maxLimit = 100;
+    }
+
+    @Data
+    public static class Snapshot {
+        // serve plain GET /animes from a pre-encoded copy of the catalog
+        private boolean enabled = false;
+        private boolean gzip = true;
+        // writes arriving within this window are folded into one rebuild
+        private Duration rebuildDelay = Duration.ofMillis(100);
+        private Duration retryDelay = Duration.ofSeconds(5);
+    }
+
+    @Data
+    public static class Admission {
+        private boolean enabled = true;
+        // long-lived streams would hold a slot for their whole duration
+        private Set<String> exemptPaths = new HashSet<>(Set.of("/animes/export", "/animes/import", "/animes/changes"));
+        // POST endpoints that only read, charged to the read budget
+        private Set<String> readPaths = new HashSet<>(Set.of("/animes/lookup"));
+        private Duration retryAfter = Duration.ofSeconds(1);
+        // settings each read and each write route starts its own limit from
+        private final Limit read = new Limit(50, Duration.ofMillis(100));
+        private final Limit write = new Limit(20, Duration.ofMillis(250));
+    }
+
+    @Data
+    @NoArgsConstructor
+    public static class Limit {
+        private int initialLimit = 20;
+        private int minLimit = 5;
+        private int maxLimit = 500;
+        // responses slower than this count as congestion
+        private Duration latencyThreshold = Duration.ofMillis(100);
+        private double backoffRatio = 0.9;
+
+        public Limit(int initialLimit, Duration latencyThreshold) {
+            this.initialLimit = initialLimit;
+            this.latencyThreshold = latencyThreshold;
+        }
+    }
+
+    @Data
+    public static class WriteBehind {
+        // POST /animes is queued and written in multi-row batches instead of one insert per request
+        private boolean enabled = false;
+        private int capacity = 10_000;
+        private int maxBatchSize = 500;
+        private Duration flushInterval = Duration.ofMillis(50);
+        private Duration shutdownTimeout = Duration.ofSeconds(10);
+    }
+
+    @Data
+    public static class Replica {
+        // reads go to this Postgres replica while it is reachable and caught up, writes always go to spring.r2dbc
+        private boolean enabled = false;
+        private String url;
+        // spring.r2dbc credentials are used when these are not set
+        private String username;
+        private String password;
+        private int maxSize = 20;
+        // a client's reads stay on the primary this long after it wrote; keep it at least max-lag
+        private Duration readYourWritesWindow = Duration.ofSeconds(5);
+        private Duration maxLag = Duration.ofSeconds(5);
+        private Duration healthCheckInterval = Duration.ofSeconds(5);
+        private Duration healthCheckTimeout = Duration.ofSeconds(1);
+    }
+
+    @Data
+    public static class Changes {
+        // LISTEN for the notifications the anime table triggers send, so caches follow writes made on other nodes
+        private boolean listen = true;
+        private Duration reconnectDelay = Duration.ofSeconds(5);
+        // comment lines that keep idle /animes/changes streams open through proxies
+        private Duration heartbeat = Duration.ofSeconds(15);
+        // changes a slow /animes/changes client may fall behind before its stream is ended
+        private int bufferSize = 256;
+    }
+
+    @Data
+    public static class ServerTiming {
+        // phase histograms are recorded for every request, the response header only for a sample
+        private boolean enabled = true;
+        private double sampleRate = 0.01;
+        // requests carrying this header always get the Server-Timing header
+        private String optInHeader = "X-Server-Timing";
+    }
+
+    @Data
+    public static class Deadlines {
+        // for reads; writes run without a deadline unless listed below, since one that times out may still commit
+        private Duration defaultTimeout = Duration.ofSeconds(5);
+        // per AnimeRepository method, zero for none; the streaming reads last as long as the client keeps reading
+        private Map<String, Duration> timeouts = new HashMap<>(Map.of("streamAll", Duration.ZERO, "streamRows", Duration.ZERO));
+    }
+
+    @Data
+    public static class Hedging {
+        private boolean enabled = true;
+        // idempotent reads only, a hedged write would run twice
+        private Set<String> methods = new HashSet<>(Set.of("findById", "findAllByIds", "existsById", "search", "findPage", "findCatalogVersion"));
+        // a second attempt starts once the first has run longer than this share of recent calls
+        private double percentile = 0.95;
+        private Duration minDelay = Duration.ofMillis(5);
+        private int minSamples = 100;
+        // hedges earned per primary query; maxBurst caps how many can be saved up while things are calm
+        private double budgetRatio = 0.05;
+        private int maxBurst = 10;
+    }
+}
@@ -0,0 +1,122 @@
+package com.academy.springwebfluxessentials.config;
+
+import com.academy.springwebfluxessentials.routing.ReadWriteRoutingConnectionFactory;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import io.r2dbc.spi.Wrapped;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.boot.actuate.metrics.r2dbc.ConnectionPoolMetrics;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+@Slf4j
+@Configuration
+public class ConnectionPoolConfig {
+    private static final String PRIMARY_POOL = "anime";
+    private static final String REPLICA_POOL = "anime-replica";
+
+    // declared as a plain ConnectionFactory because MetricsConfig decorates it
+    @Bean(destroyMethod = "dispose")
+    public ConnectionFactory connectionFactory(R2dbcProperties r2dbc, AnimeProperties properties) {
+        var primary = pool(PRIMARY_POOL, r2dbc.getUrl(), r2dbc.getUsername(), r2dbc.getPassword(), properties.getPool().getMaxSize(), properties.getPool());
+        var replica = properties.getReplica();
+        if (!replica.isEnabled()) {
+            return primary;
+        }
+        var username = replica.getUsername() != null ? replica.getUsername() : r2dbc.getUsername();
+        var password = replica.getPassword() != null ? replica.getPassword() : r2dbc.getPassword();
+        return new ReadWriteRoutingConnectionFactory(primary,
+                pool(REPLICA_POOL, replica.getUrl(), username, password, replica.getMaxSize(), properties.getPool()),
+                replica);
+    }
+
+    // also used for connections that must not come from the pool, like the one holding LISTEN
+    public static ConnectionFactoryOptions connectionOptions(String url, String username, String password) {
+        var options = ConnectionFactoryOptions.parse(url).mutate();
+        if (username != null) {
+            options.option(ConnectionFactoryOptions.USER, username);
+        }
+        if (password != null) {
+            options.option(ConnectionFactoryOptions.PASSWORD, password);
+        }
+        return options.build();
+    }
+
+    private static ConnectionPool pool(String name, String url, String username, String password, int maxSize, AnimeProperties.Pool pool) {
+        return new ConnectionPool(ConnectionPoolConfiguration.builder(ConnectionFactories.get(connectionOptions(url, username, password)))
+                .name(name)
+                .initialSize(Math.min(pool.getInitialSize(), maxSize))
+                .maxSize(maxSize)
+                .maxAcquireTime(pool.getMaxAcquireTime())
+                .maxCreateConnectionTime(pool.getMaxCreateConnectionTime())
+                .maxIdleTime(pool.getMaxIdleTime())
+                .maxLifeTime(pool.getMaxLifeTime())
+                .validationQuery(pool.getValidationQuery())
+                .build());
+    }
+
+    // opens the initial connections of every pool before the server starts so the first requests don't pay for the handshake
+    @Bean
+    public SmartInitializingSingleton connectionPoolWarmup(ConnectionFactory connectionFactory, AnimeProperties properties) {
+        return () -> {
+            var pool = properties.getPool();
+            Flux.fromIterable(pools(connectionFactory).values())
+                    .flatMap(ConnectionPool::warmup)
+                    .reduce(0, Integer::sum)
+                    .timeout(pool.getWarmupTimeout())
+                    .doOnSuccess(warmed -> log.info("Connection pools warmed up with {} connections", warmed))
+                    .onErrorResume(e -> {
+                        log.warn("Connection pool warm-up failed, connections will be opened on demand", e);
+                        return Mono.empty();
+                    })
+                    .block();
+        };
+    }
+
+    // Boot only binds r2dbc.pool.* to a ConnectionPool bean, ours sit behind the routing and metrics decorators
+    @Bean
+    public MeterBinder connectionPoolMetrics(ConnectionFactory connectionFactory) {
+        return registry -> pools(connectionFactory).forEach((name, pool) ->
+                new ConnectionPoolMetrics(pool, name, Tags.empty()).bindTo(registry));
+    }
+
+    // the routing factory is hidden behind the metrics decorator, so it can't be a MeterBinder bean itself
+    @Bean
+    public MeterBinder replicaRoutingMetrics(ConnectionFactory connectionFactory) {
+        return registry -> unwrap(connectionFactory, ReadWriteRoutingConnectionFactory.class)
+                .ifPresent(routing -> routing.bindTo(registry));
+    }
+
+    // the primary pool, and the replica pool when reads are routed, by pool name
+    private static Map<String, ConnectionPool> pools(ConnectionFactory connectionFactory) {
+        var pools = new LinkedHashMap<String, ConnectionPool>();
+        unwrap(connectionFactory, ConnectionPool.class)
+                .ifPresent(pool -> pools.put(PRIMARY_POOL, pool));
+        unwrap(connectionFactory, ReadWriteRoutingConnectionFactory.class)
+                .flatMap(routing -> unwrap(routing.getReplica(), ConnectionPool.class))
+                .ifPresent(pool -> pools.put(REPLICA_POOL, pool));
+        return pools;
+    }
+
+    // with a replica the primary pool sits behind the routing factory
+    private static <T> Optional<T> unwrap(ConnectionFactory connectionFactory, Class<T> type) {
+        var current = connectionFactory;
+        while (!type.isInstance(current) && current instanceof Wrapped) {
+            current = (ConnectionFactory) ((Wrapped<?>) current).unwrap();
+        }
+        return type.isInstance(current) ? Optional.of(type.cast(current)) : Optional.empty();
+    }
+}
@@ -0,0 +1,40 @@
+package com.academy.springwebfluxessentials.config;
+
+import com.academy.springwebfluxessentials.metrics.RepositoryMetricsInterceptor;
+import com.academy.springwebfluxessentials.metrics.TimedConnectionFactory;
+import com.academy.springwebfluxessentials.repository.AnimeRepository;
+import com.academy.springwebfluxessentials.resilience.RepositoryDeadlineInterceptor;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.r2dbc.spi.ConnectionFactory;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public static BeanPostProcessor animeMetricsPostProcessor(ObjectProvider<MeterRegistry> registry, ObjectProvider<AnimeProperties> properties) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof AnimeRepository) {
+                    var factory = new ProxyFactory();
+                    factory.setTarget(bean);
+                    factory.addInterface(AnimeRepository.class);
+                    factory.addAdvice(new RepositoryMetricsInterceptor(registry, properties));
+                    // inside the metrics advice, so the timer shows what callers wait for, hedges and timeouts included
+                    factory.addAdvice(new RepositoryDeadlineInterceptor(registry, properties));
+                    return factory.getProxy();
+                }
+                // only the factory everybody injects, not the ones it may be built from
+                if (bean instanceof ConnectionFactory && "connectionFactory".equals(beanName)) {
+                    return new TimedConnectionFactory((ConnectionFactory) bean, registry);
+                }
+                return bean;
+            }
+        };
+    }
+}
@@ -0,0 +1,34 @@
+package com.academy.springwebfluxessentials.config;
+
+import io.r2dbc.spi.ConnectionFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.data.r2dbc.connectionfactory.init.ConnectionFactoryInitializer;
+import org.springframework.data.r2dbc.connectionfactory.init.ResourceDatabasePopulator;
+import org.springframework.data.r2dbc.connectionfactory.init.ScriptUtils;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+@Configuration
+public class SchemaConfig {
+
+    // scripts are idempotent and run in file name order on every start
+    @Bean
+    public ConnectionFactoryInitializer schemaInitializer(ConnectionFactory connectionFactory) throws IOException {
+        var scripts = new PathMatchingResourcePatternResolver().getResources("classpath:db/migration/*.sql");
+        Arrays.sort(scripts, Comparator.comparing(Resource::getFilename));
+
+        var populator = new ResourceDatabasePopulator(scripts);
+        // plpgsql bodies contain semicolons, so each file is sent as one multi-statement query
+        populator.setSeparator(ScriptUtils.EOF_STATEMENT_SEPARATOR);
+
+        var initializer = new ConnectionFactoryInitializer();
+        initializer.setConnectionFactory(connectionFactory);
+        initializer.setDatabasePopulator(populator);
+        return initializer;
+    }
+}
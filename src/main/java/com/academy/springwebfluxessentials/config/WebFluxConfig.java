@@ -0,0 +1,62 @@
+package com.academy.springwebfluxessentials.config;
+
+import com.academy.springwebfluxessentials.codec.AnimeJsonEncoder;
+import com.academy.springwebfluxessentials.codec.CborArrayDecoder;
+import com.academy.springwebfluxessentials.codec.CborArrayEncoder;
+import com.academy.springwebfluxessentials.metrics.TimedValidator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.validation.Validator;
+import org.springframework.validation.beanvalidation.SpringValidatorAdapter;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+
+import java.util.List;
+
+@Configuration
+@RequiredArgsConstructor
+public class WebFluxConfig implements WebFluxConfigurer {
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+    public static final MediaType APPLICATION_NDJSON = MediaType.parseMediaType(APPLICATION_NDJSON_VALUE);
+    public static final String TEXT_CSV_VALUE = "text/csv";
+    public static final MediaType TEXT_CSV = MediaType.parseMediaType(TEXT_CSV_VALUE);
+    // handled by the Smile codecs WebFlux registers on its own once jackson-dataformat-smile is present
+    public static final String APPLICATION_SMILE_VALUE = "application/x-jackson-smile";
+    public static final String APPLICATION_STREAM_SMILE_VALUE = "application/stream+x-jackson-smile";
+
+    private static final MediaType APPLICATION_ANY_JSON = new MediaType("application", "*+json");
+
+    private final ObjectMapper objectMapper;
+    private final Jackson2ObjectMapperBuilder objectMapperBuilder;
+    private final ObjectProvider<javax.validation.Validator> beanValidator;
+
+    @Override
+    public void configureHttpMessageCodecs(ServerCodecConfigurer configurer) {
+        // Spring 5.2 only knows application/stream+json as a streaming type, x-ndjson has to be registered by hand
+        var encoder = new Jackson2JsonEncoder(objectMapper, MediaType.APPLICATION_JSON, APPLICATION_ANY_JSON, APPLICATION_NDJSON);
+        encoder.setStreamingMediaTypes(List.of(MediaType.APPLICATION_STREAM_JSON, APPLICATION_NDJSON));
+        configurer.defaultCodecs().jackson2JsonEncoder(encoder);
+        configurer.defaultCodecs().jackson2JsonDecoder(new Jackson2JsonDecoder(objectMapper, MediaType.APPLICATION_JSON, APPLICATION_ANY_JSON, APPLICATION_NDJSON));
+        // typed codecs are consulted before Jackson, so Anime responses skip it; request bodies are still read by Jackson
+        configurer.customCodecs().register(new AnimeJsonEncoder());
+        // CBOR is not a default codec in Spring 5.2; the mapper gets the same modules and settings as the json one.
+        // custom codecs are consulted first, so these only answer for an explicit application/cbor
+        var cborMapper = objectMapperBuilder.factory(new CBORFactory()).build();
+        configurer.customCodecs().register(new CborArrayEncoder(cborMapper));
+        configurer.customCodecs().register(new CborArrayDecoder(cborMapper));
+    }
+
+    // the Bean Validation provider Boot would use anyway, timed for the Server-Timing validation phase
+    @Override
+    public Validator getValidator() {
+        var validator = beanValidator.getIfAvailable();
+        return validator == null ? null : new TimedValidator(new SpringValidatorAdapter(validator));
+    }
+}
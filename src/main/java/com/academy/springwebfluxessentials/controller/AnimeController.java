@@ -1,45 +1,155 @@
 package com.academy.springwebfluxessentials.controller;
 
+import com.academy.springwebfluxessentials.config.WebFluxConfig;
 import com.academy.springwebfluxessentials.domain.Anime;
+import com.academy.springwebfluxessentials.domain.AnimeCatalogVersion;
+import com.academy.springwebfluxessentials.domain.AnimeChange;
+import com.academy.springwebfluxessentials.domain.AnimeImportResult;
+import com.academy.springwebfluxessentials.domain.AnimeMultiGet;
+import com.academy.springwebfluxessentials.domain.AnimeOperation;
+import com.academy.springwebfluxessentials.domain.AnimeOperationResult;
+import com.academy.springwebfluxessentials.domain.AnimePage;
+import com.academy.springwebfluxessentials.service.AnimeBulkService;
+import com.academy.springwebfluxessentials.service.AnimeChangeFeed;
 import com.academy.springwebfluxessentials.service.AnimeService;
+import com.academy.springwebfluxessentials.service.AnimeTransferService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import javax.validation.Valid;
+import java.time.Instant;
+import java.util.List;
 
 @RequiredArgsConstructor
 @RestController
 @Slf4j
 @RequestMapping("animes")
 public class AnimeController {
+    public static final String ACK_HEADER = "X-Anime-Ack";
+    public static final String ACK_ENQUEUE = "enqueue";
+    public static final String ACK_FLUSH = "flush";
+
     private final AnimeService service;
+    private final AnimeBulkService bulkService;
+    private final AnimeTransferService transferService;
+    private final AnimeChangeFeed changeFeed;
+
+    // conditional requests are answered with 304 by the result handler, before the body is subscribed
+    @GetMapping(produces = {MediaType.APPLICATION_JSON_VALUE, WebFluxConfig.APPLICATION_NDJSON_VALUE,
+            MediaType.APPLICATION_STREAM_JSON_VALUE, MediaType.TEXT_EVENT_STREAM_VALUE, MediaType.APPLICATION_CBOR_VALUE,
+            WebFluxConfig.APPLICATION_SMILE_VALUE, WebFluxConfig.APPLICATION_STREAM_SMILE_VALUE})
+    public Mono<ResponseEntity<Flux<Anime>>> listAll() {
+        return service.findCatalogVersion()
+                .map(catalog -> catalogValidated(catalog).body(Flux.defer(service::findAll)))
+                .switchIfEmpty(Mono.fromSupplier(() -> ResponseEntity.ok().body(Flux.defer(service::findAll))));
+    }
+
+    // a page is only worth a query when the client's copy of the catalog is stale
+    @GetMapping(params = "limit")
+    public Mono<ResponseEntity<AnimePage>> listPage(@RequestParam(required = false) Integer after, @RequestParam Integer limit,
+                                                    ServerWebExchange exchange) {
+        var page = Mono.defer(() -> service.findPage(after, limit));
+        return service.findCatalogVersion()
+                .flatMap(catalog -> exchange.checkNotModified(catalogETag(catalog), catalog.getUpdatedAt())
+                        ? Mono.just(ResponseEntity.status(HttpStatus.NOT_MODIFIED).<AnimePage>build())
+                        : page.map(catalogValidated(catalog)::body))
+                .switchIfEmpty(page.map(ResponseEntity.ok()::body));
+    }
+
+    // a cursor without a limit gets a page of the default size, not the whole catalog
+    @GetMapping(params = {"after", "!limit"})
+    public Mono<ResponseEntity<AnimePage>> listPageAfter(@RequestParam Integer after, ServerWebExchange exchange) {
+        return listPage(after, null, exchange);
+    }
 
-    @GetMapping
+    // GET /animes?ids=1,2,3; long lists go through POST /animes/lookup
+    @GetMapping(params = "ids")
     @ResponseStatus(HttpStatus.OK)
-    public Flux<Anime> listAll() {
-        return service.findAll();
+    public Mono<AnimeMultiGet> findAllById(@RequestParam List<Integer> ids) {
+        return service.findAllById(ids);
     }
 
-    @GetMapping(path = "{id}")
+    @PostMapping(path = "lookup")
     @ResponseStatus(HttpStatus.OK)
-    public Mono<Anime> findById(@PathVariable int id) {
-        return service.findById(id);
+    public Mono<AnimeMultiGet> lookup(@RequestBody List<Integer> ids) {
+        return service.findAllById(ids);
+    }
+
+    // one "changed" event per committed write; "all" tells the client to refetch instead of patching
+    @GetMapping(path = "changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<AnimeChange>> changes() {
+        var heartbeat = Flux.interval(changeFeed.heartbeat())
+                .map(tick -> ServerSentEvent.<AnimeChange>builder().comment("heartbeat").build());
+        return changeFeed.changes()
+                .map(event -> ServerSentEvent.builder(new AnimeChange(event.getIds(), event.isAll()))
+                        .event("changed")
+                        .build())
+                .mergeWith(heartbeat);
+    }
+
+    @GetMapping(path = "search", produces = {MediaType.APPLICATION_JSON_VALUE, WebFluxConfig.APPLICATION_NDJSON_VALUE,
+            MediaType.APPLICATION_CBOR_VALUE, WebFluxConfig.APPLICATION_SMILE_VALUE, WebFluxConfig.APPLICATION_STREAM_SMILE_VALUE})
+    @ResponseStatus(HttpStatus.OK)
+    public Flux<Anime> search(@RequestParam String q, @RequestParam(required = false) Integer limit) {
+        return service.search(q, limit);
+    }
+
+    @GetMapping(path = "{id}")
+    public Mono<ResponseEntity<Anime>> findById(@PathVariable int id) {
+        return service.findById(id)
+                .map(anime -> validated(ResponseEntity.ok(), anime.getVersion() == null ? null : String.valueOf(anime.getVersion()), anime.getUpdatedAt())
+                        .body(anime));
     }
 
+    // "enqueue" acknowledges a write-behind insert once it is buffered, with 202 and no id yet
     @PostMapping
-    @ResponseStatus(HttpStatus.CREATED)
-    public Mono<Anime> save(@Valid @RequestBody Anime anime) {
-        return service.save(anime);
+    public Mono<ResponseEntity<Anime>> save(@RequestHeader(name = ACK_HEADER, defaultValue = ACK_FLUSH) String ack,
+                                            @Valid @RequestBody Anime anime) {
+        return service.save(anime, !ACK_ENQUEUE.equalsIgnoreCase(ack))
+                .map(saved -> ResponseEntity.status(saved.getId() == null ? HttpStatus.ACCEPTED : HttpStatus.CREATED)
+                        .body(saved));
+    }
+
+    @PostMapping(path = "bulk")
+    @ResponseStatus(HttpStatus.OK)
+    public Flux<AnimeOperationResult> bulk(@Valid @RequestBody Flux<AnimeOperation> operations) {
+        return bulkService.execute(operations);
+    }
+
+    @GetMapping(path = "export", produces = {WebFluxConfig.TEXT_CSV_VALUE, WebFluxConfig.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<Flux<DataBuffer>> export(ServerHttpRequest request, ServerHttpResponse response) {
+        var format = request.getHeaders().getAccept().stream().anyMatch(WebFluxConfig.APPLICATION_NDJSON::equalsTypeAndSubtype)
+                ? WebFluxConfig.APPLICATION_NDJSON
+                : WebFluxConfig.TEXT_CSV;
+        return ResponseEntity.ok()
+                .contentType(format)
+                .body(transferService.export(format, response.bufferFactory()));
+    }
+
+    @PostMapping(path = "import", consumes = {WebFluxConfig.TEXT_CSV_VALUE, WebFluxConfig.APPLICATION_NDJSON_VALUE})
+    @ResponseStatus(HttpStatus.OK)
+    public Mono<AnimeImportResult> importAnimes(ServerHttpRequest request, @RequestBody Flux<DataBuffer> body) {
+        return transferService.importAnimes(body, request.getHeaders().getContentType());
     }
 
     @PutMapping(path = "{id}")
     @ResponseStatus(HttpStatus.NO_CONTENT)
-    public Mono<Void> update(@PathVariable int id, @Valid @RequestBody Anime anime) {
-       return service.update(anime.withId(id));
+    public Mono<Void> update(@PathVariable int id, @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                             @Valid @RequestBody Anime anime) {
+        var version = ifMatch == null || "*".equals(ifMatch.trim()) ? anime.getVersion() : parseVersion(ifMatch);
+        return service.update(anime.withId(id).withVersion(version));
     }
 
     @DeleteMapping(path = "{id}")
@@ -47,4 +157,36 @@ public class AnimeController {
     public Mono<Void> delete(@PathVariable int id) {
         return service.delete(id);
     }
+
+    // weak, the same catalog version is served as json, ndjson and event streams
+    private ResponseEntity.BodyBuilder catalogValidated(AnimeCatalogVersion catalog) {
+        return validated(ResponseEntity.ok(), catalogETag(catalog), catalog.getUpdatedAt());
+    }
+
+    private static String catalogETag(AnimeCatalogVersion catalog) {
+        return "W/\"" + catalog.getVersion() + "\"";
+    }
+
+    // an entity tag we never issued matches no version, so the update reports a conflict
+    private static Long parseVersion(String etag) {
+        var value = etag.trim();
+        if (value.startsWith("\"") && value.endsWith("\"") && value.length() > 2) {
+            try {
+                return Long.valueOf(value.substring(1, value.length() - 1));
+            } catch (NumberFormatException ignored) {
+                // falls through
+            }
+        }
+        return -1L;
+    }
+
+    private static ResponseEntity.BodyBuilder validated(ResponseEntity.BodyBuilder builder, String etag, Instant lastModified) {
+        if (etag != null) {
+            builder.eTag(etag);
+        }
+        if (lastModified != null) {
+            builder.lastModified(lastModified);
+        }
+        return builder;
+    }
 }
@@ -0,0 +1,79 @@
+package com.academy.springwebfluxessentials.controller;
+
+import com.academy.springwebfluxessentials.service.AnimeSnapshot;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+// answers the plain json listing from the snapshot, everything else goes on to AnimeController;
+// ahead of admission control since these responses cost next to nothing
+@Component
+@Order(10)
+@ConditionalOnProperty(prefix = "anime.snapshot", name = "enabled", havingValue = "true")
+@RequiredArgsConstructor
+public class AnimeSnapshotFilter implements WebFilter {
+    private final AnimeSnapshot snapshot;
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        var request = exchange.getRequest();
+        if (request.getMethod() != HttpMethod.GET
+                || !"/animes".equals(request.getPath().pathWithinApplication().value())
+                || !request.getQueryParams().isEmpty()
+                || !prefersJson(request)) {
+            return chain.filter(exchange);
+        }
+        var current = snapshot.current();
+        if (current == null) {
+            return chain.filter(exchange);
+        }
+
+        // same validators as AnimeController.listAll, both come from the catalog version
+        if (exchange.checkNotModified("W/\"" + current.getVersion() + "\"", current.getUpdatedAt())) {
+            return exchange.getResponse().setComplete();
+        }
+
+        var response = exchange.getResponse();
+        var headers = response.getHeaders();
+        var gzip = current.getGzip() != null && acceptsGzip(request);
+        var body = (gzip ? current.getGzip() : current.getJson()).duplicate();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.setContentLength(body.remaining());
+        headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        // wrapping does not copy, the response reads straight from the off-heap snapshot
+        return response.writeWith(Mono.just(response.bufferFactory().wrap(body)));
+    }
+
+    private static boolean prefersJson(ServerHttpRequest request) {
+        var accept = request.getHeaders().getAccept();
+        if (accept.isEmpty()) {
+            return true;
+        }
+        MediaType.sortBySpecificityAndQuality(accept);
+        return accept.get(0).includes(MediaType.APPLICATION_JSON);
+    }
+
+    private static boolean acceptsGzip(ServerHttpRequest request) {
+        for (var value : request.getHeaders().getOrEmpty(HttpHeaders.ACCEPT_ENCODING)) {
+            for (var coding : value.split(",")) {
+                var token = coding.trim();
+                if (token.startsWith("gzip") && !token.replace(" ", "").endsWith("q=0")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
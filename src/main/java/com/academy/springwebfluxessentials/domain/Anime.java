@@ -1,11 +1,14 @@
 package com.academy.springwebfluxessentials.domain;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.*;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
 import org.springframework.data.relational.core.mapping.Table;
 
 import javax.validation.constraints.NotEmpty;
 import javax.validation.constraints.NotNull;
+import java.time.Instant;
 
 @Data
 @AllArgsConstructor
@@ -19,4 +22,10 @@ public class Anime {
     @NotNull
     @NotEmpty(message = "Name cannot be empty")
     private String name;
+    // maintained by the database, absent until the row has been read back
+    @Version
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long version;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Instant updatedAt;
 }
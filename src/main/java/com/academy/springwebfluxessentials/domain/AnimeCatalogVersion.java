@@ -0,0 +1,17 @@
+package com.academy.springwebfluxessentials.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class AnimeCatalogVersion {
+    private long version;
+    private Instant updatedAt;
+}
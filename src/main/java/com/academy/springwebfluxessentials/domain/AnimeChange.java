@@ -0,0 +1,20 @@
+package com.academy.springwebfluxessentials.domain;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Set;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class AnimeChange {
+    // absent when any row may have changed
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Set<Integer> ids;
+    private boolean all;
+}
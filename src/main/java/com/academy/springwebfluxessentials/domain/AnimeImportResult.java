@@ -0,0 +1,14 @@
+package com.academy.springwebfluxessentials.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class AnimeImportResult {
+    private long rows;
+}
@@ -0,0 +1,18 @@
+package com.academy.springwebfluxessentials.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class AnimeMultiGet {
+    // in the order the ids were requested, duplicates answered once
+    private List<Anime> content;
+    private List<Integer> missing;
+}
@@ -0,0 +1,41 @@
+package com.academy.springwebfluxessentials.domain;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.Valid;
+import javax.validation.constraints.AssertTrue;
+import javax.validation.constraints.NotNull;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class AnimeOperation {
+    public enum Type {CREATE, UPDATE, DELETE}
+
+    @NotNull(message = "Operation cannot be null")
+    private Type op;
+    private Integer id;
+    @Valid
+    private Anime anime;
+
+    @JsonIgnore
+    @AssertTrue(message = "CREATE needs an anime, UPDATE needs an id and an anime, DELETE needs an id")
+    public boolean isComplete() {
+        if (op == null) {
+            return true;
+        }
+        switch (op) {
+            case CREATE:
+                return anime != null;
+            case UPDATE:
+                return id != null && anime != null;
+            default:
+                return id != null;
+        }
+    }
+}
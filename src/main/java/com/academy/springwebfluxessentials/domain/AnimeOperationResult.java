@@ -0,0 +1,18 @@
+package com.academy.springwebfluxessentials.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class AnimeOperationResult {
+    // position of the operation in the request stream
+    private long index;
+    private AnimeOperation.Type op;
+    private Integer id;
+    private int status;
+}
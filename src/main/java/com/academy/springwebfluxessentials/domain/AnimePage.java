@@ -0,0 +1,18 @@
+package com.academy.springwebfluxessentials.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class AnimePage {
+    private List<Anime> content;
+    // id to send as "after" to get the next page, null on the last page
+    private Integer next;
+}
@@ -10,6 +10,8 @@ import java.util.Map;
 
 @Component
 public class CustomAttributes extends DefaultErrorAttributes {
+    static final String DEVELOPER_MESSAGE = "Respect my history, a response status exception happened";
+
     @Override
     public Map<String, Object> getErrorAttributes(ServerRequest request, ErrorAttributeOptions options) {
         var errorAttributesMap = super.getErrorAttributes(request, options);
@@ -17,7 +19,7 @@ public class CustomAttributes extends DefaultErrorAttributes {
         if (throwable instanceof ResponseStatusException) {
             var ex = (ResponseStatusException) throwable;
             errorAttributesMap.put("message", ex.getMessage());
-            errorAttributesMap.put("developerMessage", "Respect my history, a response status exception happened");
+            errorAttributesMap.put("developerMessage", DEVELOPER_MESSAGE);
         }
         return errorAttributesMap;
     }
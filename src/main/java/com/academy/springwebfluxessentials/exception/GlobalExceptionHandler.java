@@ -1,12 +1,14 @@
 package com.academy.springwebfluxessentials.exception;
 
-import org.apache.commons.lang3.StringUtils;
+import com.academy.springwebfluxessentials.metrics.ServerTiming;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
 import org.springframework.boot.autoconfigure.web.ResourceProperties;
 import org.springframework.boot.autoconfigure.web.reactive.error.AbstractErrorWebExceptionHandler;
 import org.springframework.boot.web.error.ErrorAttributeOptions;
 import org.springframework.boot.web.reactive.error.ErrorAttributes;
 import org.springframework.context.ApplicationContext;
 import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.codec.ServerCodecConfigurer;
 import org.springframework.stereotype.Component;
@@ -14,11 +16,21 @@ import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.server.*;
 import reactor.core.publisher.Mono;
 
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Component
 @Order(-2)
 public class GlobalExceptionHandler extends AbstractErrorWebExceptionHandler {
+    // the format Jackson writes the Date in the attributes map with
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSxxx");
+
+    private final Map<HttpStatus, Map<String, EncodedError>> encodedErrors = new ConcurrentHashMap<>();
 
     public GlobalExceptionHandler(ErrorAttributes errorAttributes, ResourceProperties resourceProperties, ApplicationContext applicationContext, ServerCodecConfigurer codecConfigurer) {
         super(errorAttributes, resourceProperties, applicationContext);
@@ -30,10 +42,28 @@ public class GlobalExceptionHandler extends AbstractErrorWebExceptionHandler {
         return RouterFunctions.route(RequestPredicates.all(), this::formatErrorResponse);
     }
 
+    // error handling runs after the filter chain, so the request's timing is found through the exchange
     private Mono<ServerResponse> formatErrorResponse(ServerRequest request) {
-        var query = request.uri().getQuery();
+        var start = System.nanoTime();
+        return errorResponse(request)
+                .doOnNext(response -> {
+                    ServerTiming timing = request.exchange().getAttribute(ServerTiming.ATTRIBUTE);
+                    if (timing != null) {
+                        timing.record("error", System.nanoTime() - start);
+                    }
+                });
+    }
+
+    private Mono<ServerResponse> errorResponse(ServerRequest request) {
+        var query = request.exchange().getRequest().getURI().getRawQuery();
+        var traceEnabled = isTraceEnabled(query);
+        var error = getError(request);
+        if (!traceEnabled && error instanceof StacklessResponseStatusException) {
+            return formatEncodedErrorResponse(request, (StacklessResponseStatusException) error);
+        }
+
         //var options = isTraceEnabled(query) ? ErrorAttributeOptions.of(ErrorAttributeOptions.Include.MESSAGE, ErrorAttributeOptions.Include.STACK_TRACE) : ErrorAttributeOptions.of(ErrorAttributeOptions.Include.MESSAGE);
-        var options = isTraceEnabled(query) ? ErrorAttributeOptions.of(ErrorAttributeOptions.Include.STACK_TRACE) : ErrorAttributeOptions.defaults();
+        var options = traceEnabled ? ErrorAttributeOptions.of(ErrorAttributeOptions.Include.STACK_TRACE) : ErrorAttributeOptions.defaults();
 
         var errorAttributesMap = getErrorAttributes(request, options);
 
@@ -44,7 +74,54 @@ public class GlobalExceptionHandler extends AbstractErrorWebExceptionHandler {
                 .body(BodyInserters.fromValue(errorAttributesMap));
     }
 
+    // same document CustomAttributes produces, with only timestamp, path and request id filled in per request
+    private Mono<ServerResponse> formatEncodedErrorResponse(ServerRequest request, StacklessResponseStatusException error) {
+        var encoded = encodedErrors
+                .computeIfAbsent(error.getStatus(), status -> new ConcurrentHashMap<>())
+                .computeIfAbsent(String.valueOf(error.getReason()), reason -> new EncodedError(error));
+
+        var timestamp = TIMESTAMP.format(OffsetDateTime.now(ZoneOffset.UTC)).getBytes(StandardCharsets.US_ASCII);
+        var path = JsonStringEncoder.getInstance().quoteAsUTF8(request.path());
+        var requestId = JsonStringEncoder.getInstance().quoteAsUTF8(request.exchange().getRequest().getId());
+
+        var buffer = request.exchange().getResponse().bufferFactory()
+                .allocateBuffer(encoded.length() + timestamp.length + path.length + requestId.length)
+                .write(EncodedError.HEAD)
+                .write(timestamp)
+                .write(EncodedError.PATH)
+                .write(path)
+                .write(encoded.middle)
+                .write(requestId)
+                .write(encoded.tail);
+        return ServerResponse
+                .status(error.getStatus())
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(BodyInserters.fromDataBuffers(Mono.just(buffer)));
+    }
+
     private boolean isTraceEnabled(String query) {
-        return !StringUtils.isEmpty(query) && query.contains("trace=true");
+        return query != null && query.contains("trace=true");
+    }
+
+    private static class EncodedError {
+        private static final byte[] HEAD = "{\"timestamp\":\"".getBytes(StandardCharsets.US_ASCII);
+        private static final byte[] PATH = "\",\"path\":\"".getBytes(StandardCharsets.US_ASCII);
+
+        private final byte[] middle;
+        private final byte[] tail;
+
+        private EncodedError(StacklessResponseStatusException error) {
+            var encoder = JsonStringEncoder.getInstance();
+            this.middle = ("\",\"status\":" + error.getStatus().value()
+                    + ",\"error\":\"" + new String(encoder.quoteAsString(error.getStatus().getReasonPhrase()))
+                    + "\",\"message\":\"" + new String(encoder.quoteAsString(error.getMessage()))
+                    + "\",\"requestId\":\"").getBytes(StandardCharsets.UTF_8);
+            this.tail = ("\",\"developerMessage\":\"" + new String(encoder.quoteAsString(CustomAttributes.DEVELOPER_MESSAGE))
+                    + "\"}").getBytes(StandardCharsets.UTF_8);
+        }
+
+        private int length() {
+            return HEAD.length + PATH.length + middle.length + tail.length;
+        }
     }
 }
@@ -0,0 +1,16 @@
+package com.academy.springwebfluxessentials.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+// for expected, frequent failures with a fixed reason: no stack trace, and GlobalExceptionHandler serves a cached body
+public class StacklessResponseStatusException extends ResponseStatusException {
+    public StacklessResponseStatusException(HttpStatus status, String reason) {
+        super(status, reason);
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+}
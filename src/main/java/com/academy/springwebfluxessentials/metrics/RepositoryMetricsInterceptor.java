@@ -0,0 +1,87 @@
+package com.academy.springwebfluxessentials.metrics;
+
+import com.academy.springwebfluxessentials.config.AnimeProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.ObjectProvider;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@Slf4j
+@RequiredArgsConstructor
+public class RepositoryMetricsInterceptor implements MethodInterceptor {
+    private final ObjectProvider<MeterRegistry> registryProvider;
+    private final ObjectProvider<AnimeProperties> propertiesProvider;
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    // resolved on first use, this interceptor is created while the context is still starting
+    private volatile MeterRegistry registry;
+    private volatile AnimeProperties.Metrics config;
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        var result = invocation.proceed();
+        var method = invocation.getMethod().getName();
+        var args = invocation.getArguments();
+        // the request's ServerTiming, if the caller runs on behalf of one, gets the time to the first row as its db phase
+        if (result instanceof Mono) {
+            return ServerTiming.timed("db", Mono.defer(() -> {
+                var start = System.nanoTime();
+                return ((Mono<?>) result).doFinally(signal -> record(method, args, signal, System.nanoTime() - start));
+            }));
+        }
+        if (result instanceof Flux) {
+            return ServerTiming.timed("db", Flux.defer(() -> {
+                var start = System.nanoTime();
+                return ((Flux<?>) result).doFinally(signal -> record(method, args, signal, System.nanoTime() - start));
+            }));
+        }
+        return result;
+    }
+
+    private void record(String method, Object[] args, SignalType signal, long nanos) {
+        var outcome = signal == SignalType.ON_COMPLETE ? "success" : signal == SignalType.ON_ERROR ? "error" : "cancelled";
+        timers.computeIfAbsent(method + ':' + outcome, key -> Timer.builder("anime.repository.queries")
+                .description("AnimeRepository calls, from subscription to the last row")
+                .tag("method", method)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(registry()))
+                .record(nanos, TimeUnit.NANOSECONDS);
+
+        var metrics = config();
+        if (signal != SignalType.CANCEL
+                && nanos > metrics.getSlowQueryThreshold().toNanos()
+                && ThreadLocalRandom.current().nextDouble() < metrics.getSlowQuerySampleRate()) {
+            log.warn("Slow repository call {}({}) took {} ms", method,
+                    StringUtils.abbreviate(Arrays.deepToString(args), 200), Duration.ofNanos(nanos).toMillis());
+        }
+    }
+
+    private MeterRegistry registry() {
+        if (registry == null) {
+            registry = registryProvider.getObject();
+        }
+        return registry;
+    }
+
+    private AnimeProperties.Metrics config() {
+        if (config == null) {
+            config = propertiesProvider.getObject().getMetrics();
+        }
+        return config;
+    }
+}
@@ -0,0 +1,111 @@
+package com.academy.springwebfluxessentials.metrics;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+// where one request spent its time; reachable through the exchange attributes and the Reactor context of
+// everything the request subscribes to
+public class ServerTiming {
+    public static final String ATTRIBUTE = ServerTiming.class.getName();
+    // for synchronous callbacks like validation, which see neither the exchange nor the context
+    private static final ThreadLocal<ServerTiming> CURRENT = new ThreadLocal<>();
+
+    private final long startNanos = System.nanoTime();
+    private final Map<String, LongAdder> phases = new ConcurrentHashMap<>();
+
+    public void record(String phase, long nanos) {
+        phases.computeIfAbsent(phase, key -> new LongAdder()).add(nanos);
+    }
+
+    public long get(String phase) {
+        var nanos = phases.get(phase);
+        return nanos == null ? 0 : nanos.sum();
+    }
+
+    public long elapsedNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    public Map<String, Long> phases() {
+        return phases.entrySet().stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue().sum(), Long::sum, TreeMap::new));
+    }
+
+    // Server-Timing header value, durations in milliseconds
+    public String header() {
+        var value = new StringBuilder();
+        phases().forEach((phase, nanos) -> value.append(entry(phase, nanos)).append(", "));
+        return value.append(entry("total", elapsedNanos())).toString();
+    }
+
+    private static String entry(String phase, long nanos) {
+        return String.format(Locale.ROOT, "%s;dur=%.2f", phase, nanos / 1_000_000.0);
+    }
+
+    public Context putIn(Context context) {
+        return context.put(ServerTiming.class, this);
+    }
+
+    public static Optional<ServerTiming> from(Context context) {
+        return context.getOrEmpty(ServerTiming.class);
+    }
+
+    public static ServerTiming current() {
+        return CURRENT.get();
+    }
+
+    void runAsCurrent(Runnable action) {
+        var previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            action.run();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    // the returned action records the time since this call, once, however often it runs
+    public Runnable start(String phase) {
+        var start = System.nanoTime();
+        var stopped = new AtomicBoolean();
+        return () -> {
+            if (stopped.compareAndSet(false, true)) {
+                record(phase, System.nanoTime() - start);
+            }
+        };
+    }
+
+    // from subscription to the first signal, charged to the request the subscriber belongs to; the header is
+    // written when the first response buffer commits, so time after the first value could never show up in it
+    public static <T> Mono<T> timed(String phase, Mono<T> source) {
+        return Mono.subscriberContext().flatMap(context -> from(context)
+                .map(timing -> {
+                    var stop = timing.start(phase);
+                    return source.doOnEach(signal -> stop.run()).doOnCancel(stop);
+                })
+                .orElse(source));
+    }
+
+    public static <T> Flux<T> timed(String phase, Flux<T> source) {
+        return Mono.subscriberContext().flatMapMany(context -> from(context)
+                .map(timing -> {
+                    var stop = timing.start(phase);
+                    return source.doOnEach(signal -> stop.run()).doOnCancel(stop);
+                })
+                .orElse(source));
+    }
+}
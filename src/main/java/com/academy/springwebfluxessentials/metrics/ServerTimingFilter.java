@@ -0,0 +1,173 @@
+package com.academy.springwebfluxessentials.metrics;
+
+import com.academy.springwebfluxessentials.config.AnimeProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscription;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpRequestDecorator;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.HandlerMapping;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.CoreSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Operators;
+import reactor.util.context.Context;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// outermost filter: every request gets a ServerTiming, its phases become histograms and, for sampled or
+// opted-in requests, a Server-Timing header; both are taken when the response headers are committed
+@Component
+@Order(0)
+public class ServerTimingFilter implements WebFilter, MeterBinder {
+    public static final String HEADER = "Server-Timing";
+
+    private final AnimeProperties.ServerTiming config;
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    private volatile MeterRegistry registry;
+
+    public ServerTimingFilter(AnimeProperties properties) {
+        this.config = properties.getServerTiming();
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        if (!config.isEnabled()) {
+            return chain.filter(exchange);
+        }
+        var timing = new ServerTiming();
+        exchange.getAttributes().put(ServerTiming.ATTRIBUTE, timing);
+
+        var request = exchange.getRequest();
+        var emitHeader = request.getHeaders().containsKey(config.getOptInHeader())
+                || ThreadLocalRandom.current().nextDouble() < config.getSampleRate();
+        // error responses are written outside the filter chain, on the undecorated response
+        var response = exchange.getResponse();
+        response.beforeCommit(() -> {
+            if (emitHeader) {
+                response.getHeaders().add(HEADER, timing.header());
+            }
+            record(exchange, timing);
+            return Mono.empty();
+        });
+
+        return chain.filter(exchange.mutate()
+                .request(new TimedRequest(request, timing))
+                .response(new TimedResponse(response, timing))
+                .build())
+                .subscriberContext(timing::putIn);
+    }
+
+    private void record(ServerWebExchange exchange, ServerTiming timing) {
+        if (registry == null) {
+            return;
+        }
+        var pattern = exchange.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        var uri = pattern == null ? "UNKNOWN" : pattern.toString();
+        timing.phases().forEach((phase, nanos) -> timer(phase, uri).record(nanos, TimeUnit.NANOSECONDS));
+        timer("total", uri).record(timing.elapsedNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    private Timer timer(String phase, String uri) {
+        return timers.computeIfAbsent(phase + ' ' + uri, key -> Timer.builder("anime.request.phase")
+                .description("Time a request spent in each phase until its response headers were sent")
+                .tag("phase", phase)
+                .tag("uri", uri)
+                .publishPercentileHistogram()
+                .register(registry));
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    // decoding and validation run synchronously inside the body's signals, which is where they can find the timing
+    private static class TimedRequest extends ServerHttpRequestDecorator {
+        private final ServerTiming timing;
+
+        TimedRequest(ServerHttpRequest delegate, ServerTiming timing) {
+            super(delegate);
+            this.timing = timing;
+        }
+
+        @Override
+        public Flux<DataBuffer> getBody() {
+            return super.getBody().transform(Operators.<DataBuffer, DataBuffer>lift((scannable, actual) -> new CurrentTimingSubscriber(actual, timing)));
+        }
+    }
+
+    private static class CurrentTimingSubscriber implements CoreSubscriber<DataBuffer> {
+        private final CoreSubscriber<? super DataBuffer> actual;
+        private final ServerTiming timing;
+
+        CurrentTimingSubscriber(CoreSubscriber<? super DataBuffer> actual, ServerTiming timing) {
+            this.actual = actual;
+            this.timing = timing;
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            actual.onSubscribe(subscription);
+        }
+
+        @Override
+        public void onNext(DataBuffer buffer) {
+            timing.runAsCurrent(() -> actual.onNext(buffer));
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            actual.onError(error);
+        }
+
+        @Override
+        public void onComplete() {
+            timing.runAsCurrent(actual::onComplete);
+        }
+
+        @Override
+        public Context currentContext() {
+            return actual.currentContext();
+        }
+    }
+
+    // encoding happens while the body publisher produces its first buffer, minus any queries that production waits on
+    private static class TimedResponse extends ServerHttpResponseDecorator {
+        private final ServerTiming timing;
+
+        TimedResponse(ServerHttpResponse delegate, ServerTiming timing) {
+            super(delegate);
+            this.timing = timing;
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            return super.writeWith(Flux.defer(() -> {
+                var start = System.nanoTime();
+                var dbBefore = timing.get("db");
+                var first = new AtomicBoolean(true);
+                return Flux.<DataBuffer>from(body).doOnNext(buffer -> {
+                    if (first.getAndSet(false)) {
+                        var waited = timing.get("db") - dbBefore;
+                        timing.record("encode", Math.max(0, System.nanoTime() - start - waited));
+                    }
+                });
+            }));
+        }
+    }
+}
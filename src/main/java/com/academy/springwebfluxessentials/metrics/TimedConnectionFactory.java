@@ -0,0 +1,66 @@
+package com.academy.springwebfluxessentials.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryMetadata;
+import io.r2dbc.spi.Wrapped;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.ObjectProvider;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.TimeUnit;
+
+// records how long callers wait for a connection, which is the pool acquisition time once a pool sits behind it
+public class TimedConnectionFactory implements ConnectionFactory, Wrapped<ConnectionFactory>, Disposable {
+    private final ConnectionFactory delegate;
+    private final ObjectProvider<MeterRegistry> registryProvider;
+    private volatile Timer timer;
+
+    public TimedConnectionFactory(ConnectionFactory delegate, ObjectProvider<MeterRegistry> registryProvider) {
+        this.delegate = delegate;
+        this.registryProvider = registryProvider;
+    }
+
+    @Override
+    public Publisher<? extends Connection> create() {
+        return Mono.subscriberContext().flatMap(context -> {
+            var start = System.nanoTime();
+            return Mono.<Connection>from(delegate.create())
+                    .doOnSuccess(connection -> {
+                        var nanos = System.nanoTime() - start;
+                        timer().record(nanos, TimeUnit.NANOSECONDS);
+                        ServerTiming.from(context).ifPresent(timing -> timing.record("pool", nanos));
+                    });
+        });
+    }
+
+    @Override
+    public ConnectionFactoryMetadata getMetadata() {
+        return delegate.getMetadata();
+    }
+
+    @Override
+    public ConnectionFactory unwrap() {
+        return delegate;
+    }
+
+    @Override
+    public void dispose() {
+        if (delegate instanceof Disposable) {
+            ((Disposable) delegate).dispose();
+        }
+    }
+
+    private Timer timer() {
+        if (timer == null) {
+            timer = Timer.builder("r2dbc.connection.acquire")
+                    .description("Time spent waiting for an R2DBC connection")
+                    .publishPercentileHistogram()
+                    .register(registryProvider.getObject());
+        }
+        return timer;
+    }
+}
@@ -0,0 +1,42 @@
+package com.academy.springwebfluxessentials.metrics;
+
+import org.springframework.validation.Errors;
+import org.springframework.validation.SmartValidator;
+
+// charges @Valid checks to the request whose body is being read, see ServerTimingFilter
+public class TimedValidator implements SmartValidator {
+    private final SmartValidator delegate;
+
+    public TimedValidator(SmartValidator delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public boolean supports(Class<?> clazz) {
+        return delegate.supports(clazz);
+    }
+
+    @Override
+    public void validate(Object target, Errors errors) {
+        timed(() -> delegate.validate(target, errors));
+    }
+
+    @Override
+    public void validate(Object target, Errors errors, Object... validationHints) {
+        timed(() -> delegate.validate(target, errors, validationHints));
+    }
+
+    private void timed(Runnable validation) {
+        var timing = ServerTiming.current();
+        if (timing == null) {
+            validation.run();
+            return;
+        }
+        var start = System.nanoTime();
+        try {
+            validation.run();
+        } finally {
+            timing.record("validation", System.nanoTime() - start);
+        }
+    }
+}
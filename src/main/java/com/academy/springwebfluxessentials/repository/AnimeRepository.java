@@ -1,9 +1,35 @@
 package com.academy.springwebfluxessentials.repository;
 
 import com.academy.springwebfluxessentials.domain.Anime;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-public interface AnimeRepository extends ReactiveCrudRepository<Anime, Integer> {
+public interface AnimeRepository extends ReactiveCrudRepository<Anime, Integer>, AnimeRepositoryCustom {
     Mono<Anime> findById(int id);
+
+    @Query("SELECT * FROM anime WHERE id > $1 ORDER BY id LIMIT $2")
+    Flux<Anime> findPage(int after, int limit);
+
+    @Query("SELECT * FROM anime WHERE id = ANY($1)")
+    Flux<Anime> findAllByIds(Integer[] ids);
+
+    // prefix matches first, then the closest fuzzy matches; each branch is served by its own index
+    @Query("SELECT * FROM anime WHERE lower(name) LIKE $1 OR name % $2 "
+            + "ORDER BY lower(name) LIKE $1 DESC, similarity(name, $2) DESC, id LIMIT $3")
+    Flux<Anime> search(String prefixPattern, String term, int limit);
+
+    @Modifying
+    @Query("UPDATE anime SET name = $2 WHERE id = $1")
+    Mono<Integer> updateName(int id, String name);
+
+    @Modifying
+    @Query("UPDATE anime SET name = $2 WHERE id = $1 AND version = $3")
+    Mono<Integer> updateNameIfVersion(int id, String name, long version);
+
+    @Modifying
+    @Query("DELETE FROM anime WHERE id = $1")
+    Mono<Integer> removeById(int id);
 }
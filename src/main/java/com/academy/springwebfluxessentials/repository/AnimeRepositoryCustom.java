@@ -0,0 +1,33 @@
+package com.academy.springwebfluxessentials.repository;
+
+import com.academy.springwebfluxessentials.domain.Anime;
+import com.academy.springwebfluxessentials.domain.AnimeCatalogVersion;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.function.BiFunction;
+
+public interface AnimeRepositoryCustom {
+    Flux<Anime> streamAll(int fetchSize);
+
+    // raw id and name columns, for callers that don't need an Anime per row
+    <T> Flux<T> streamRows(int fetchSize, BiFunction<Integer, String, T> mapper);
+
+    // generated ids, in the same order as names
+    Flux<Integer> insertNames(String[] names);
+
+    // ids of the rows that existed and were updated
+    Flux<Integer> updateNames(Integer[] ids, String[] names);
+
+    // ids of the rows that existed and were deleted
+    Flux<Integer> removeAllByIds(Integer[] ids);
+
+    // rows with an existing id get the new name, the others are inserted with that id
+    Mono<Integer> upsertAll(Integer[] ids, String[] names);
+
+    // bumped by a statement trigger on every write that changes anime
+    Mono<AnimeCatalogVersion> findCatalogVersion();
+
+    // moves the id sequence past ids inserted explicitly by upsertAll
+    Mono<Void> syncIdSequence();
+}
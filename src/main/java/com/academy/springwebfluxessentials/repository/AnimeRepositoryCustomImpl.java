@@ -0,0 +1,87 @@
+package com.academy.springwebfluxessentials.repository;
+
+import com.academy.springwebfluxessentials.domain.Anime;
+import com.academy.springwebfluxessentials.domain.AnimeCatalogVersion;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.function.BiFunction;
+
+@RequiredArgsConstructor
+public class AnimeRepositoryCustomImpl implements AnimeRepositoryCustom {
+    private final DatabaseClient databaseClient;
+
+    @Override
+    public Flux<Anime> streamAll(int fetchSize) {
+        return databaseClient.execute("SELECT * FROM anime ORDER BY id")
+                .filter(statement -> statement.fetchSize(fetchSize))
+                .as(Anime.class)
+                .fetch()
+                .all();
+    }
+
+    @Override
+    public <T> Flux<T> streamRows(int fetchSize, BiFunction<Integer, String, T> mapper) {
+        return databaseClient.execute("SELECT id, name FROM anime ORDER BY id")
+                .filter(statement -> statement.fetchSize(fetchSize))
+                .map(row -> mapper.apply(row.get("id", Integer.class), row.get("name", String.class)))
+                .all();
+    }
+
+    // RETURNING has no defined order, so ids are drawn per ordinality first and handed back sorted by it;
+    // the CTE calls nextval, so Postgres evaluates it exactly once
+    @Override
+    public Flux<Integer> insertNames(String[] names) {
+        return databaseClient.execute("WITH input AS (SELECT nextval(pg_get_serial_sequence('anime', 'id'))::int AS id, name, ord "
+                + "FROM unnest($1::text[]) WITH ORDINALITY AS u(name, ord)), "
+                + "inserted AS (INSERT INTO anime (id, name) SELECT id, name FROM input RETURNING id) "
+                + "SELECT input.id FROM input JOIN inserted USING (id) ORDER BY input.ord")
+                .bind(0, names)
+                .map(row -> row.get("id", Integer.class))
+                .all();
+    }
+
+    @Override
+    public Flux<Integer> updateNames(Integer[] ids, String[] names) {
+        return databaseClient.execute("UPDATE anime SET name = u.name FROM unnest($1::int[], $2::text[]) AS u(id, name) "
+                + "WHERE anime.id = u.id RETURNING anime.id")
+                .bind(0, ids)
+                .bind(1, names)
+                .map(row -> row.get("id", Integer.class))
+                .all();
+    }
+
+    @Override
+    public Flux<Integer> removeAllByIds(Integer[] ids) {
+        return databaseClient.execute("DELETE FROM anime WHERE id = ANY($1) RETURNING id")
+                .bind(0, ids)
+                .map(row -> row.get("id", Integer.class))
+                .all();
+    }
+
+    @Override
+    public Mono<Integer> upsertAll(Integer[] ids, String[] names) {
+        return databaseClient.execute("INSERT INTO anime (id, name) SELECT * FROM unnest($1::int[], $2::text[]) "
+                + "ON CONFLICT (id) DO UPDATE SET name = EXCLUDED.name")
+                .bind(0, ids)
+                .bind(1, names)
+                .fetch()
+                .rowsUpdated();
+    }
+
+    @Override
+    public Mono<AnimeCatalogVersion> findCatalogVersion() {
+        return databaseClient.execute("SELECT sum(version)::bigint AS version, max(updated_at) AS updated_at FROM anime_catalog")
+                .map(row -> new AnimeCatalogVersion(row.get("version", Long.class), row.get("updated_at", Instant.class)))
+                .one();
+    }
+
+    @Override
+    public Mono<Void> syncIdSequence() {
+        return databaseClient.execute("SELECT setval(pg_get_serial_sequence('anime', 'id'), COALESCE(MAX(id), 0) + 1, false) FROM anime")
+                .then();
+    }
+}
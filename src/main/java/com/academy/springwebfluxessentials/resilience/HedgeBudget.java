@@ -0,0 +1,34 @@
+package com.academy.springwebfluxessentials.resilience;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// token bucket fed by primary queries: each one earns a ratio of a hedge, so hedges never add more than that
+// share of the query load, with at most maxBurst of them saved up
+class HedgeBudget {
+    private static final long SCALE = 1000;
+
+    private final long earned;
+    private final long max;
+    private final AtomicLong tokens = new AtomicLong();
+
+    HedgeBudget(double ratio, int maxBurst) {
+        this.earned = Math.round(ratio * SCALE);
+        this.max = maxBurst * SCALE;
+    }
+
+    void deposit() {
+        tokens.getAndUpdate(current -> Math.min(max, current + earned));
+    }
+
+    boolean tryWithdraw() {
+        while (true) {
+            var current = tokens.get();
+            if (current < SCALE) {
+                return false;
+            }
+            if (tokens.compareAndSet(current, current - SCALE)) {
+                return true;
+            }
+        }
+    }
+}
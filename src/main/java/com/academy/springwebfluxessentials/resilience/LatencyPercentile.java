@@ -0,0 +1,40 @@
+package com.academy.springwebfluxessentials.resilience;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+// a percentile over the most recent samples, recomputed every few samples instead of on every read
+class LatencyPercentile {
+    private static final int WINDOW = 1024;
+    private static final int RECOMPUTE_EVERY = 64;
+
+    private final double percentile;
+    private final long[] samples = new long[WINDOW];
+    private final AtomicLong count = new AtomicLong();
+    private volatile long value = -1;
+
+    LatencyPercentile(double percentile) {
+        this.percentile = percentile;
+    }
+
+    void record(long nanos) {
+        var n = count.getAndIncrement();
+        samples[(int) (n % WINDOW)] = nanos;
+        if ((n + 1) % RECOMPUTE_EVERY == 0) {
+            recompute((int) Math.min(n + 1, WINDOW));
+        }
+    }
+
+    // racing writers may leave an older sample in a slot, which a latency estimate can live with
+    private void recompute(int size) {
+        var sorted = Arrays.copyOf(samples, size);
+        Arrays.sort(sorted);
+        var index = (int) Math.ceil(percentile * size) - 1;
+        value = sorted[Math.max(0, Math.min(size - 1, index))];
+    }
+
+    // -1 until there are enough samples to trust
+    long nanos(int minSamples) {
+        return count.get() < minSamples ? -1 : value;
+    }
+}
@@ -0,0 +1,180 @@
+package com.academy.springwebfluxessentials.resilience;
+
+import com.academy.springwebfluxessentials.config.AnimeProperties;
+import com.academy.springwebfluxessentials.exception.StacklessResponseStatusException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.HttpStatus;
+import org.springframework.transaction.NoTransactionException;
+import org.springframework.transaction.reactive.TransactionSynchronizationManager;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongConsumer;
+
+// every AnimeRepository read gets a deadline; idempotent reads that run past their usual latency get a second,
+// hedged attempt on another pooled connection and the first answer wins
+@RequiredArgsConstructor
+public class RepositoryDeadlineInterceptor implements MethodInterceptor {
+    private static final List<String> READ_PREFIXES = List.of("find", "exists", "count", "search", "stream");
+
+    private final ObjectProvider<MeterRegistry> registryProvider;
+    private final ObjectProvider<AnimeProperties> propertiesProvider;
+    private final Map<String, LatencyPercentile> latencies = new ConcurrentHashMap<>();
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    // resolved on first use, this interceptor is created while the context is still starting
+    private volatile AnimeProperties properties;
+    private volatile HedgeBudget budget;
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        var result = invocation.proceed();
+        var method = invocation.getMethod().getName();
+        if (result instanceof Mono) {
+            var query = (Mono<Object>) result;
+            return withDeadline(method, hedgeable(method) ? Mono.from(hedged(method, query.flux())) : query);
+        }
+        if (result instanceof Flux) {
+            var query = (Flux<Object>) result;
+            return withDeadline(method, hedgeable(method) ? hedged(method, query) : query);
+        }
+        return result;
+    }
+
+    private boolean hedgeable(String method) {
+        var hedging = properties().getHedging();
+        return hedging.isEnabled() && hedging.getMethods().contains(method);
+    }
+
+    // repository publishers are cold, subscribing twice runs the query twice
+    private <T> Flux<T> hedged(String method, Flux<T> query) {
+        var hedging = properties().getHedging();
+        var latency = latencies.computeIfAbsent(method, key -> new LatencyPercentile(hedging.getPercentile()));
+        return outsideTransaction().flatMapMany(eligible -> {
+            if (!eligible) {
+                return query;
+            }
+            budget().deposit();
+            var running = new AtomicInteger(1);
+            // a primary cancelled before it answered is recorded with the time it had run so far, a lower bound that
+            // keeps the slow calls a winning hedge cut short in the percentile
+            var primary = attempt(query, running, latency::record, latency::record);
+            var threshold = latency.nanos(hedging.getMinSamples());
+            if (threshold < 0) {
+                return primary;
+            }
+            var delay = Duration.ofNanos(Math.max(threshold, hedging.getMinDelay().toNanos()));
+            var hedge = Mono.delay(delay).flatMapMany(tick -> {
+                if (!budget().tryWithdraw()) {
+                    return Flux.<T>never();
+                }
+                counter(method, "sent").increment();
+                running.incrementAndGet();
+                return attempt(query, running, nanos -> counter(method, "won").increment(), nanos -> { });
+            });
+            // the loser is cancelled, which hands its connection back to the pool
+            return Flux.first(primary, hedge);
+        });
+    }
+
+    // one run of the query; the time to its first row or completion is what decides which attempt wins
+    private static <T> Flux<T> attempt(Flux<T> query, AtomicInteger running, LongConsumer onAnswer, LongConsumer onCancel) {
+        return Flux.defer(() -> {
+            var start = System.nanoTime();
+            var answered = new AtomicBoolean();
+            return query
+                    .doOnEach(signal -> {
+                        if ((signal.isOnNext() || signal.isOnComplete()) && answered.compareAndSet(false, true)) {
+                            onAnswer.accept(System.nanoTime() - start);
+                        }
+                    })
+                    .doOnCancel(() -> {
+                        if (answered.compareAndSet(false, true)) {
+                            onCancel.accept(System.nanoTime() - start);
+                        }
+                    })
+                    // failing before answering leaves the race to the other attempt while that one still runs
+                    .onErrorResume(error -> !answered.get() && running.decrementAndGet() > 0 ? Flux.never() : Flux.error(error));
+        });
+    }
+
+    // inside a transaction both attempts would queue on the same connection, and cancelling one could break it
+    private static Mono<Boolean> outsideTransaction() {
+        return TransactionSynchronizationManager.forCurrentTransaction()
+                .map(manager -> !manager.isActualTransactionActive())
+                .onErrorReturn(NoTransactionException.class, true);
+    }
+
+    private <T> Mono<T> withDeadline(String method, Mono<T> query) {
+        var timeout = timeout(method);
+        return timeout == null ? query : query.timeout(timeout, Mono.defer(() -> Mono.<T>error(deadlineExceeded(method, timeout))));
+    }
+
+    // one deadline for the whole stream rather than the gap between two rows
+    private <T> Flux<T> withDeadline(String method, Flux<T> query) {
+        var timeout = timeout(method);
+        if (timeout == null) {
+            return query;
+        }
+        return Flux.defer(() -> {
+            var deadline = System.nanoTime() + timeout.toNanos();
+            return query.timeout(Mono.delay(timeout),
+                    item -> Mono.delay(Duration.ofNanos(Math.max(0, deadline - System.nanoTime()))),
+                    Flux.defer(() -> Flux.<T>error(deadlineExceeded(method, timeout))));
+        });
+    }
+
+    // null when the method runs without a deadline
+    // writes only get one when listed explicitly: a write that times out may still commit, and a client retrying
+    // the 504 could then insert twice
+    private Duration timeout(String method) {
+        var deadlines = properties().getDeadlines();
+        var timeout = deadlines.getTimeouts().getOrDefault(method, isRead(method) ? deadlines.getDefaultTimeout() : null);
+        return timeout == null || timeout.isZero() || timeout.isNegative() ? null : timeout;
+    }
+
+    // the Spring Data query prefixes, which every read in AnimeRepository follows
+    private static boolean isRead(String method) {
+        return READ_PREFIXES.stream().anyMatch(method::startsWith);
+    }
+
+    private StacklessResponseStatusException deadlineExceeded(String method, Duration timeout) {
+        counter(method, "timeout").increment();
+        return new StacklessResponseStatusException(HttpStatus.GATEWAY_TIMEOUT, "Anime query did not finish within " + timeout.toMillis() + " ms");
+    }
+
+    private Counter counter(String method, String event) {
+        return counters.computeIfAbsent(method + ':' + event, key -> Counter.builder("anime.repository.deadlines")
+                .description("AnimeRepository calls that timed out, and hedged attempts sent and won")
+                .tag("method", method)
+                .tag("event", event)
+                .register(registryProvider.getObject()));
+    }
+
+    private AnimeProperties properties() {
+        if (properties == null) {
+            properties = propertiesProvider.getObject();
+        }
+        return properties;
+    }
+
+    private HedgeBudget budget() {
+        if (budget == null) {
+            var hedging = properties().getHedging();
+            budget = new HedgeBudget(hedging.getBudgetRatio(), hedging.getMaxBurst());
+        }
+        return budget;
+    }
+}
@@ -0,0 +1,22 @@
+package com.academy.springwebfluxessentials.routing;
+
+import reactor.util.context.Context;
+
+// travels in the Reactor context; the preference set closest to the subscriber wins, so a pinned request
+// is not moved back to the replica by the service underneath it
+public enum ReadPreference {
+    // the client wrote recently and has to see its own writes
+    PRIMARY,
+    // a read for one request that tolerates replica lag
+    REPLICA;
+
+    private static final String KEY = ReadPreference.class.getName();
+
+    public Context putIfAbsent(Context context) {
+        return context.hasKey(KEY) ? context : context.put(KEY, this);
+    }
+
+    static ReadPreference of(Context context) {
+        return context.getOrDefault(KEY, PRIMARY);
+    }
+}
@@ -0,0 +1,134 @@
+package com.academy.springwebfluxessentials.routing;
+
+import com.academy.springwebfluxessentials.config.AnimeProperties;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Wrapped;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.r2dbc.connectionfactory.lookup.AbstractRoutingConnectionFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// sends reads that opted in through ReadPreference to the replica while it is reachable and caught up,
+// everything else, including every transaction, to the primary
+@Slf4j
+public class ReadWriteRoutingConnectionFactory extends AbstractRoutingConnectionFactory
+        implements Wrapped<ConnectionFactory>, Disposable, MeterBinder {
+    private static final String PRIMARY = "primary";
+    private static final String REPLICA = "replica";
+    // an idle primary ages the replay timestamp, so a replica that has replayed everything it received counts as current
+    private static final String LAG_QUERY = "SELECT (CASE WHEN NOT pg_is_in_recovery() "
+            + "OR pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0 "
+            + "ELSE COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()), 0) END)::float8 AS lag";
+
+    private final ConnectionFactory primary;
+    private final ConnectionFactory replica;
+    private final AnimeProperties.Replica config;
+    private final Scheduler scheduler;
+    private final Disposable healthCheck;
+    private final Map<String, LongAdder> routed = Map.of(PRIMARY, new LongAdder(), REPLICA, new LongAdder());
+
+    private volatile boolean replicaUsable;
+    private volatile double replicaLagSeconds = Double.NaN;
+
+    public ReadWriteRoutingConnectionFactory(ConnectionFactory primary, ConnectionFactory replica,
+                                             AnimeProperties.Replica config) {
+        this(primary, replica, config, Schedulers.parallel());
+    }
+
+    ReadWriteRoutingConnectionFactory(ConnectionFactory primary, ConnectionFactory replica,
+                                      AnimeProperties.Replica config, Scheduler scheduler) {
+        this.primary = primary;
+        this.replica = replica;
+        this.config = config;
+        this.scheduler = scheduler;
+        setTargetConnectionFactories(Map.of(PRIMARY, primary, REPLICA, replica));
+        setDefaultTargetConnectionFactory(primary);
+        var interval = config.getHealthCheckInterval().toMillis();
+        this.healthCheck = scheduler.schedulePeriodically(() -> checkReplica().subscribe(), 0, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    protected Mono<Object> determineCurrentLookupKey() {
+        return Mono.subscriberContext()
+                .map(context -> {
+                    var target = replicaUsable && ReadPreference.of(context) == ReadPreference.REPLICA ? REPLICA : PRIMARY;
+                    routed.get(target).increment();
+                    return target;
+                });
+    }
+
+    private Mono<Void> checkReplica() {
+        return Mono.usingWhen(Mono.<Connection>defer(() -> Mono.from(replica.create())),
+                connection -> Mono.from(connection.createStatement(LAG_QUERY).execute())
+                        .flatMap(result -> Mono.from(result.map((row, metadata) -> row.get("lag", Double.class)))),
+                Connection::close)
+                .timeout(config.getHealthCheckTimeout(), scheduler)
+                .doOnNext(this::replicaStatus)
+                .doOnError(error -> {
+                    if (replicaUsable) {
+                        log.warn("Replica health check failed, reads go to the primary", error);
+                    }
+                    replicaStatus(null);
+                })
+                .onErrorResume(error -> Mono.empty())
+                .then();
+    }
+
+    // null when the replica could not be reached
+    void replicaStatus(Double lagSeconds) {
+        var usable = lagSeconds != null && lagSeconds <= config.getMaxLag().toMillis() / 1000.0;
+        if (lagSeconds != null && !usable && replicaUsable) {
+            log.warn("Replica is {}s behind, reads go to the primary", lagSeconds);
+        }
+        replicaLagSeconds = lagSeconds == null ? Double.NaN : lagSeconds;
+        replicaUsable = usable;
+    }
+
+    @Override
+    public ConnectionFactory unwrap() {
+        return primary;
+    }
+
+    // unwrap() leads to the primary; warm-up and pool metrics reach the replica through this
+    public ConnectionFactory getReplica() {
+        return replica;
+    }
+
+    @Override
+    public void dispose() {
+        healthCheck.dispose();
+        dispose(replica);
+        dispose(primary);
+    }
+
+    private static void dispose(ConnectionFactory connectionFactory) {
+        if (connectionFactory instanceof Disposable) {
+            ((Disposable) connectionFactory).dispose();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("anime.db.replica.usable", this, factory -> factory.replicaUsable ? 1 : 0)
+                .description("Whether reads are currently sent to the replica")
+                .register(registry);
+        Gauge.builder("anime.db.replica.lag", this, factory -> factory.replicaLagSeconds)
+                .baseUnit("seconds")
+                .register(registry);
+        routed.forEach((target, count) -> FunctionCounter.builder("anime.db.routed", count, LongAdder::sum)
+                .description("Connections handed out per target database")
+                .tag("target", target)
+                .register(registry));
+    }
+}
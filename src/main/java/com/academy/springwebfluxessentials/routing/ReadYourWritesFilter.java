@@ -0,0 +1,73 @@
+package com.academy.springwebfluxessentials.routing;
+
+import com.academy.springwebfluxessentials.config.AnimeProperties;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseCookie;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Set;
+
+// a successful write sets a short-lived cookie; while the client sends it back its reads stay on the primary
+@Component
+@Order(30)
+@ConditionalOnProperty(prefix = "anime.replica", name = "enabled", havingValue = "true")
+public class ReadYourWritesFilter implements WebFilter {
+    static final String COOKIE = "anime-wrote-at";
+
+    private final Duration window;
+    private final Set<String> readPaths;
+
+    public ReadYourWritesFilter(AnimeProperties properties) {
+        this.window = properties.getReplica().getReadYourWritesWindow();
+        this.readPaths = properties.getAdmission().getReadPaths();
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        var request = exchange.getRequest();
+        var method = request.getMethod();
+        var path = request.getPath().pathWithinApplication().value();
+        if (!path.startsWith("/animes")) {
+            return chain.filter(exchange);
+        }
+
+        if (method != HttpMethod.GET && method != HttpMethod.HEAD && !readPaths.contains(path)) {
+            var response = exchange.getResponse();
+            response.beforeCommit(() -> {
+                // no status yet means the default 200
+                var status = response.getStatusCode();
+                if (status == null || status.is2xxSuccessful()) {
+                    response.addCookie(ResponseCookie.from(COOKIE, String.valueOf(System.currentTimeMillis()))
+                            .path("/animes")
+                            .maxAge(window.getSeconds() + 1)
+                            .httpOnly(true)
+                            .build());
+                }
+                return Mono.empty();
+            });
+            return chain.filter(exchange);
+        }
+
+        var cookie = request.getCookies().getFirst(COOKIE);
+        if (cookie != null && wroteRecently(cookie.getValue())) {
+            return chain.filter(exchange)
+                    .subscriberContext(ReadPreference.PRIMARY::putIfAbsent);
+        }
+        return chain.filter(exchange);
+    }
+
+    private boolean wroteRecently(String wroteAt) {
+        try {
+            return System.currentTimeMillis() - Long.parseLong(wroteAt) < window.toMillis();
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+}
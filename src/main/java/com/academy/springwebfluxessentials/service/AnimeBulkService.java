@@ -0,0 +1,114 @@
+package com.academy.springwebfluxessentials.service;
+
+import com.academy.springwebfluxessentials.config.AnimeProperties;
+import com.academy.springwebfluxessentials.domain.AnimeOperation;
+import com.academy.springwebfluxessentials.domain.AnimeOperationResult;
+import com.academy.springwebfluxessentials.repository.AnimeRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.util.function.Tuple2;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+@Service
+@RequiredArgsConstructor
+public class AnimeBulkService {
+    private final AnimeRepository repository;
+    private final AnimeProperties properties;
+    private final AnimeCache cache;
+    private final TransactionalOperator transactionalOperator;
+    private final ApplicationEventPublisher events;
+
+    public Flux<AnimeOperationResult> execute(Flux<AnimeOperation> operations) {
+        return Flux.defer(() -> {
+            Set<Integer> touched = ConcurrentHashMap.newKeySet();
+            return operations
+                    .index()
+                    .buffer(properties.getBulk().getChunkSize())
+                    .concatMap(chunk -> Flux.fromIterable(runs(chunk)).concatMap(this::executeRun))
+                    .doOnNext(result -> touched.add(result.getId()))
+                    // held back until the commit, a client must never see a result the rollback undoes
+                    .collectList()
+                    .as(transactionalOperator::transactional)
+                    // evicted only once the transaction committed, so nobody re-caches the old rows meanwhile
+                    .doOnSuccess(results -> {
+                        touched.forEach(cache::invalidate);
+                        events.publishEvent(AnimeChangedEvent.of(touched));
+                    })
+                    .flatMapIterable(results -> results);
+        });
+    }
+
+    // consecutive operations of the same type become one statement, a repeated id starts a new one
+    private List<List<Tuple2<Long, AnimeOperation>>> runs(List<Tuple2<Long, AnimeOperation>> chunk) {
+        var runs = new ArrayList<List<Tuple2<Long, AnimeOperation>>>();
+        List<Tuple2<Long, AnimeOperation>> run = new ArrayList<>();
+        Set<Integer> ids = new HashSet<>();
+        for (var item : chunk) {
+            var operation = item.getT2();
+            var sameType = !run.isEmpty() && run.get(0).getT2().getOp() == operation.getOp();
+            if (!run.isEmpty() && (!sameType || (operation.getId() != null && ids.contains(operation.getId())))) {
+                runs.add(run);
+                run = new ArrayList<>();
+                ids.clear();
+            }
+            run.add(item);
+            if (operation.getId() != null) {
+                ids.add(operation.getId());
+            }
+        }
+        if (!run.isEmpty()) {
+            runs.add(run);
+        }
+        return runs;
+    }
+
+    private Flux<AnimeOperationResult> executeRun(List<Tuple2<Long, AnimeOperation>> run) {
+        switch (run.get(0).getT2().getOp()) {
+            case CREATE:
+                return create(run);
+            case UPDATE:
+                return update(run);
+            default:
+                return delete(run);
+        }
+    }
+
+    private Flux<AnimeOperationResult> create(List<Tuple2<Long, AnimeOperation>> run) {
+        var names = run.stream()
+                .map(item -> item.getT2().getAnime().getName())
+                .toArray(String[]::new);
+        return Flux.fromIterable(run)
+                .zipWith(repository.insertNames(names), (item, id) -> result(item, id, HttpStatus.CREATED));
+    }
+
+    private Flux<AnimeOperationResult> update(List<Tuple2<Long, AnimeOperation>> run) {
+        var ids = run.stream().map(item -> item.getT2().getId()).toArray(Integer[]::new);
+        var names = run.stream().map(item -> item.getT2().getAnime().getName()).toArray(String[]::new);
+        return repository.updateNames(ids, names)
+                .collect(Collectors.toSet())
+                .flatMapMany(updated -> Flux.fromIterable(run)
+                        .map(item -> result(item, item.getT2().getId(), updated.contains(item.getT2().getId()) ? HttpStatus.NO_CONTENT : HttpStatus.NOT_FOUND)));
+    }
+
+    private Flux<AnimeOperationResult> delete(List<Tuple2<Long, AnimeOperation>> run) {
+        var ids = run.stream().map(item -> item.getT2().getId()).toArray(Integer[]::new);
+        return repository.removeAllByIds(ids)
+                .collect(Collectors.toSet())
+                .flatMapMany(deleted -> Flux.fromIterable(run)
+                        .map(item -> result(item, item.getT2().getId(), deleted.contains(item.getT2().getId()) ? HttpStatus.NO_CONTENT : HttpStatus.NOT_FOUND)));
+    }
+
+    private AnimeOperationResult result(Tuple2<Long, AnimeOperation> item, Integer id, HttpStatus status) {
+        return new AnimeOperationResult(item.getT1(), item.getT2().getOp(), id, status.value());
+    }
+}
@@ -0,0 +1,79 @@
+package com.academy.springwebfluxessentials.service;
+
+import com.academy.springwebfluxessentials.config.AnimeProperties;
+import com.academy.springwebfluxessentials.domain.Anime;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.IntFunction;
+
+@Component
+public class AnimeCache implements MeterBinder {
+    private final boolean enabled;
+    // Optional.empty() entries are the cached "not found" answers
+    private final AsyncCache<Integer, Optional<Anime>> cache;
+
+    public AnimeCache(AnimeProperties properties) {
+        var config = properties.getCache();
+        this.enabled = config.isEnabled();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(config.getMaximumSize())
+                .expireAfter(expiry(config.getTtl(), config.getNegativeTtl()))
+                .recordStats()
+                .buildAsync();
+    }
+
+    public Mono<Anime> get(int id, IntFunction<Mono<Anime>> loader) {
+        if (!enabled) {
+            return loader.apply(id);
+        }
+        return Mono.defer(() -> Mono.fromFuture(cache.get(id, (key, executor) -> loader.apply(key)
+                        .map(Optional::of)
+                        .defaultIfEmpty(Optional.empty())
+                        .toFuture())
+                        // cancelling the copy leaves the load shared with the other subscribers running
+                        .copy()))
+                .filter(Optional::isPresent)
+                .map(Optional::get);
+    }
+
+    public void invalidate(int id) {
+        cache.synchronous().invalidate(id);
+    }
+
+    public void invalidateAll() {
+        cache.synchronous().invalidateAll();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache.synchronous(), "anime");
+    }
+
+    private static Expiry<Integer, Optional<Anime>> expiry(Duration ttl, Duration negativeTtl) {
+        return new Expiry<Integer, Optional<Anime>>() {
+            @Override
+            public long expireAfterCreate(Integer key, Optional<Anime> value, long currentTime) {
+                return value.isPresent() ? ttl.toNanos() : negativeTtl.toNanos();
+            }
+
+            @Override
+            public long expireAfterUpdate(Integer key, Optional<Anime> value, long currentTime, long currentDuration) {
+                return expireAfterCreate(key, value, currentTime);
+            }
+
+            @Override
+            public long expireAfterRead(Integer key, Optional<Anime> value, long currentTime, long currentDuration) {
+                return currentDuration;
+            }
+        };
+    }
+}
@@ -0,0 +1,42 @@
+package com.academy.springwebfluxessentials.service;
+
+import com.academy.springwebfluxessentials.config.AnimeProperties;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.DirectProcessor;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+
+import java.time.Duration;
+
+// the stream behind GET /animes/changes: the notifications of every node while listening, this node's own writes otherwise
+@Component
+public class AnimeChangeFeed {
+    private final DirectProcessor<AnimeChangedEvent> processor = DirectProcessor.create();
+    private final FluxSink<AnimeChangedEvent> sink = processor.sink();
+    private final AnimeProperties.Changes config;
+
+    public AnimeChangeFeed(AnimeProperties properties) {
+        this.config = properties.getChanges();
+    }
+
+    // a subscriber that falls more than buffer-size changes behind gets an error and has to resync
+    public Flux<AnimeChangedEvent> changes() {
+        return processor.onBackpressureBuffer(config.getBufferSize());
+    }
+
+    public Duration heartbeat() {
+        return config.getHeartbeat();
+    }
+
+    void emit(AnimeChangedEvent event) {
+        sink.next(event);
+    }
+
+    @EventListener
+    public void onChanged(AnimeChangedEvent event) {
+        if (!config.isListen()) {
+            emit(event);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.academy.springwebfluxessentials.service;
+
+import com.academy.springwebfluxessentials.config.AnimeProperties;
+import com.academy.springwebfluxessentials.config.ConnectionPoolConfig;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.r2dbc.postgresql.api.Notification;
+import io.r2dbc.postgresql.api.PostgresqlConnection;
+import io.r2dbc.postgresql.api.PostgresqlResult;
+import io.r2dbc.spi.ConnectionFactories;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcProperties;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+// applies the anime_changes notifications of every node, this one included, to the local caches and the change feed;
+// the invalidations are idempotent, so hearing back our own writes costs nothing but a snapshot refresh
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "anime.changes", name = "listen", havingValue = "true", matchIfMissing = true)
+public class AnimeChangeListener implements MeterBinder, DisposableBean {
+    static final String CHANNEL = "anime_changes";
+
+    private final R2dbcProperties r2dbc;
+    private final AnimeProperties.Changes config;
+    private final AnimeCache cache;
+    private final AnimeChangeFeed feed;
+    private final ApplicationEventPublisher events;
+    private final ObjectMapper objectMapper;
+    private final AtomicBoolean connectedBefore = new AtomicBoolean();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder reconnects = new LongAdder();
+
+    private volatile Disposable subscription;
+
+    public AnimeChangeListener(R2dbcProperties r2dbc, AnimeProperties properties, AnimeCache cache, AnimeChangeFeed feed,
+                               ApplicationEventPublisher events, ObjectMapper objectMapper) {
+        this.r2dbc = r2dbc;
+        this.config = properties.getChanges();
+        this.cache = cache;
+        this.feed = feed;
+        this.events = events;
+        this.objectMapper = objectMapper;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        subscription = listen()
+                .repeatWhen(closed -> closed.delayElements(config.getReconnectDelay()))
+                .retryWhen(Retry.fixedDelay(Long.MAX_VALUE, config.getReconnectDelay())
+                        .doBeforeRetry(signal -> log.warn("Lost the {} listener, reconnecting", CHANNEL, signal.failure())))
+                .subscribe(this::apply);
+    }
+
+    // a connection of its own: LISTEN belongs to the session, a pooled connection would hand it to other queries
+    private Flux<AnimeChangedEvent> listen() {
+        var connectionFactory = ConnectionFactories.get(ConnectionPoolConfig.connectionOptions(r2dbc.getUrl(), r2dbc.getUsername(), r2dbc.getPassword()));
+        return Flux.usingWhen(Mono.from(connectionFactory.create()).cast(PostgresqlConnection.class),
+                connection -> connection.createStatement("LISTEN " + CHANNEL)
+                        .execute()
+                        .flatMap(PostgresqlResult::getRowsUpdated)
+                        .then(Mono.fromRunnable(this::listening))
+                        .thenMany(connection.getNotifications()),
+                PostgresqlConnection::close)
+                .map(Notification::getParameter)
+                .map(this::parse);
+    }
+
+    // whatever was notified while we were disconnected is lost, so after a reconnect everything counts as changed
+    private void listening() {
+        log.info("Listening for anime changes on {}", CHANNEL);
+        if (connectedBefore.getAndSet(true)) {
+            reconnects.increment();
+            apply(AnimeChangedEvent.all());
+        }
+    }
+
+    private AnimeChangedEvent parse(String payload) {
+        try {
+            var node = objectMapper.readTree(payload);
+            if (node.path("all").asBoolean(false) || !node.path("ids").isArray()) {
+                return AnimeChangedEvent.all();
+            }
+            var ids = new HashSet<Integer>();
+            node.get("ids").forEach(id -> ids.add(id.asInt()));
+            return AnimeChangedEvent.of(ids);
+        } catch (JsonProcessingException e) {
+            log.warn("Unreadable {} payload {}, treating it as a change of everything", CHANNEL, payload);
+            return AnimeChangedEvent.all();
+        }
+    }
+
+    private void apply(AnimeChangedEvent event) {
+        received.increment();
+        if (event.isAll()) {
+            cache.invalidateAll();
+        } else {
+            event.getIds().forEach(cache::invalidate);
+        }
+        feed.emit(event);
+        events.publishEvent(event);
+    }
+
+    @Override
+    public void destroy() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("anime.changes.received", received, LongAdder::sum)
+                .description("Change notifications applied to this node")
+                .register(registry);
+        FunctionCounter.builder("anime.changes.reconnects", reconnects, LongAdder::sum)
+                .register(registry);
+    }
+}
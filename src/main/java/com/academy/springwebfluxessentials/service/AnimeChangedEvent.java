@@ -0,0 +1,27 @@
+package com.academy.springwebfluxessentials.service;
+
+import lombok.Value;
+
+import java.util.Set;
+
+// published after a write committed; no ids means any row may have changed
+@Value
+public class AnimeChangedEvent {
+    Set<Integer> ids;
+
+    public static AnimeChangedEvent of(Set<Integer> ids) {
+        return new AnimeChangedEvent(Set.copyOf(ids));
+    }
+
+    public static AnimeChangedEvent of(int id) {
+        return new AnimeChangedEvent(Set.of(id));
+    }
+
+    public static AnimeChangedEvent all() {
+        return new AnimeChangedEvent(null);
+    }
+
+    public boolean isAll() {
+        return ids == null;
+    }
+}
@@ -0,0 +1,135 @@
+package com.academy.springwebfluxessentials.service;
+
+import com.academy.springwebfluxessentials.config.AnimeProperties;
+import com.academy.springwebfluxessentials.domain.Anime;
+import com.academy.springwebfluxessentials.repository.AnimeRepository;
+import com.academy.springwebfluxessentials.routing.ReadPreference;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+@Component
+public class AnimeLoader implements MeterBinder {
+    private final AnimeRepository repository;
+    private final AnimeProperties.Batch batch;
+    // one shared query per id while it is running, every concurrent caller subscribes to it
+    private final Map<Integer, Mono<Anime>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder deduplicated = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+
+    private final Object lock = new Object();
+    private List<PendingLookup> pending = new ArrayList<>();
+    private boolean flushScheduled;
+
+    public AnimeLoader(AnimeRepository repository, AnimeProperties properties) {
+        this.repository = repository;
+        this.batch = properties.getBatch();
+    }
+
+    public Mono<Anime> load(int id) {
+        return Mono.defer(() -> {
+            var query = new AtomicReference<Mono<Anime>>();
+            // forgotten before the result is signalled, so a caller arriving afterwards starts a fresh query
+            query.set(Mono.defer(() -> fetch(id))
+                    .doOnSuccess(found -> inFlight.remove(id, query.get()))
+                    .doOnError(error -> inFlight.remove(id, query.get()))
+                    .cache());
+
+            var shared = inFlight.putIfAbsent(id, query.get());
+            if (shared == null) {
+                return query.get();
+            }
+            deduplicated.increment();
+            return shared;
+        });
+    }
+
+    // a query that started before a write must not be joined by callers that arrive after it
+    @EventListener
+    public void onChanged(AnimeChangedEvent event) {
+        if (event.isAll()) {
+            inFlight.clear();
+        } else {
+            event.getIds().forEach(inFlight::remove);
+        }
+    }
+
+    private Mono<Anime> fetch(int id) {
+        if (!batch.isEnabled()) {
+            return repository.findById(id);
+        }
+        return Mono.create(sink -> {
+            List<PendingLookup> full = null;
+            synchronized (lock) {
+                pending.add(new PendingLookup(id, sink));
+                if (pending.size() >= batch.getMaxSize()) {
+                    full = pending;
+                    pending = new ArrayList<>();
+                } else if (!flushScheduled) {
+                    flushScheduled = true;
+                    Schedulers.parallel().schedule(this::flushWindow, batch.getWindow().toNanos(), TimeUnit.NANOSECONDS);
+                }
+            }
+            if (full != null) {
+                execute(full);
+            }
+        });
+    }
+
+    private void flushWindow() {
+        List<PendingLookup> lookups;
+        synchronized (lock) {
+            lookups = pending;
+            pending = new ArrayList<>();
+            flushScheduled = false;
+        }
+        if (!lookups.isEmpty()) {
+            execute(lookups);
+        }
+    }
+
+    private void execute(List<PendingLookup> lookups) {
+        batches.increment();
+        var ids = lookups.stream()
+                .map(PendingLookup::getId)
+                .distinct()
+                .toArray(Integer[]::new);
+
+        // answers callers from different requests and fills the cache, so it reads what was last committed
+        repository.findAllByIds(ids)
+                .collectMap(Anime::getId)
+                .subscriberContext(ReadPreference.PRIMARY::putIfAbsent)
+                .subscribe(found -> lookups.forEach(lookup -> lookup.getSink().success(found.get(lookup.getId()))),
+                        error -> lookups.forEach(lookup -> lookup.getSink().error(error)));
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("anime.lookups.deduplicated", deduplicated, LongAdder::doubleValue)
+                .description("findById calls served by a query already in flight for the same id")
+                .register(registry);
+        FunctionCounter.builder("anime.lookups.batches", batches, LongAdder::doubleValue)
+                .description("id = ANY(...) queries issued for batched findById calls")
+                .register(registry);
+    }
+
+    @Value
+    private static class PendingLookup {
+        int id;
+        MonoSink<Anime> sink;
+    }
+}
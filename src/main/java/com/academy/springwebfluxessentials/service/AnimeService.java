@@ -1,46 +1,160 @@
 package com.academy.springwebfluxessentials.service;
 
+import com.academy.springwebfluxessentials.config.AnimeProperties;
 import com.academy.springwebfluxessentials.domain.Anime;
+import com.academy.springwebfluxessentials.domain.AnimeCatalogVersion;
+import com.academy.springwebfluxessentials.domain.AnimeMultiGet;
+import com.academy.springwebfluxessentials.domain.AnimePage;
+import com.academy.springwebfluxessentials.exception.StacklessResponseStatusException;
+import com.academy.springwebfluxessentials.metrics.ServerTiming;
 import com.academy.springwebfluxessentials.repository.AnimeRepository;
+import com.academy.springwebfluxessentials.routing.ReadPreference;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
 @Service
 @RequiredArgsConstructor
 public class AnimeService {
     private final AnimeRepository repository;
+    private final AnimeProperties properties;
+    private final AnimeCache cache;
+    private final AnimeLoader loader;
+    private final ApplicationEventPublisher events;
+    private final AnimeWriteBehind writeBehind;
 
     public Flux<Anime> findAll() {
-        return repository.findAll();
+        var fetchSize = properties.getListing().getFetchSize();
+        return repository.streamAll(fetchSize)
+                .limitRate(fetchSize)
+                .subscriberContext(ReadPreference.REPLICA::putIfAbsent);
+    }
+
+    // without a limit the listing's default page size applies
+    public Mono<AnimePage> findPage(Integer after, Integer limit) {
+        var listing = properties.getListing();
+        var pageSize = Math.max(1, Math.min(limit == null ? listing.getDefaultPageSize() : limit, listing.getMaxPageSize()));
+        // one extra row tells us whether there is a next page without a count query
+        return repository.findPage(after == null ? Integer.MIN_VALUE : after, pageSize + 1)
+                .collectList()
+                .map(rows -> rows.size() > pageSize
+                        ? new AnimePage(rows.subList(0, pageSize), rows.get(pageSize - 1).getId())
+                        : new AnimePage(rows, null))
+                .subscriberContext(ReadPreference.REPLICA::putIfAbsent);
+    }
+
+    public Flux<Anime> search(String query, Integer limit) {
+        var term = query == null ? "" : query.trim();
+        if (term.isEmpty()) {
+            return Flux.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "Search query cannot be empty"));
+        }
+        var search = properties.getSearch();
+        var size = Math.max(1, Math.min(limit == null ? search.getDefaultLimit() : limit, search.getMaxLimit()));
+        return repository.search(escapeLike(term.toLowerCase(Locale.ROOT)) + "%", term, size)
+                .subscriberContext(ReadPreference.REPLICA::putIfAbsent);
+    }
+
+    // the user's % and _ are literal characters, not wildcards
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\")
+                .replace("%", "\\%")
+                .replace("_", "\\_");
+    }
+
+    public Mono<AnimeCatalogVersion> findCatalogVersion() {
+        return repository.findCatalogVersion()
+                .subscriberContext(ReadPreference.REPLICA::putIfAbsent);
     }
 
     public Mono<Anime> findById(int id) {
-        return repository.findById(id)
-                .switchIfEmpty(monoResponseStatusNotFoundException());
+        // a cached row is served to everybody and a replica may not have the write that invalidated it yet,
+        // so the cache is filled from the primary; with the cache off this is an ordinary read of this request
+        // batched and cached lookups run outside the request, so their time is charged here as one lookup phase
+        return ServerTiming.timed("lookup", cache.get(id, key -> loader.load(key).subscriberContext(ReadPreference.PRIMARY::putIfAbsent)))
+                .switchIfEmpty(monoResponseStatusNotFoundException())
+                .subscriberContext(ReadPreference.REPLICA::putIfAbsent);
+    }
+
+    // one id = ANY(...) query for the whole list; ids without a row are listed instead of failing the call
+    public Mono<AnimeMultiGet> findAllById(List<Integer> ids) {
+        var requested = ids == null ? List.<Integer>of() : ids.stream()
+                .filter(Objects::nonNull)
+                .distinct()
+                .collect(Collectors.toList());
+        if (requested.isEmpty()) {
+            return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "At least one id is required"));
+        }
+        var maxIds = properties.getListing().getMaxIds();
+        if (requested.size() > maxIds) {
+            return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "At most " + maxIds + " ids can be fetched at once"));
+        }
+        return repository.findAllByIds(requested.toArray(Integer[]::new))
+                .collectMap(Anime::getId)
+                .map(found -> new AnimeMultiGet(
+                        requested.stream().map(found::get).filter(Objects::nonNull).collect(Collectors.toList()),
+                        requested.stream().filter(id -> !found.containsKey(id)).collect(Collectors.toList())))
+                .subscriberContext(ReadPreference.REPLICA::putIfAbsent);
     }
 
     public <T> Mono<T> monoResponseStatusNotFoundException() {
-        return Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND, "Anime not found"));
+        return Mono.error(new StacklessResponseStatusException(HttpStatus.NOT_FOUND, "Anime not found"));
     }
 
     public Mono<Anime> save(Anime anime) {
-        return repository.save(anime);
+        return save(anime, true);
     }
 
+    // with write-behind on and awaitFlush off the anime is only queued and comes back without an id
+    public Mono<Anime> save(Anime anime, boolean awaitFlush) {
+        if (writeBehind.isEnabled() && anime.getId() == null) {
+            return writeBehind.insert(anime, awaitFlush);
+        }
+        return repository.save(anime)
+                .doOnNext(saved -> changed(saved.getId()));
+    }
+
+    public <T> Mono<T> monoResponseStatusConflictException() {
+        return Mono.error(new StacklessResponseStatusException(HttpStatus.CONFLICT, "Anime was modified concurrently"));
+    }
+
+    // without a version the last writer wins, with one the write only happens if nobody got there first
     public Mono<Void> update(Anime anime) {
-        return findById(anime.getId())
-                .map(animeFound -> anime.withId(animeFound.getId()))
-                .flatMap(repository::save)
-                .then();
+        var write = anime.getVersion() == null
+                ? repository.updateName(anime.getId(), anime.getName()).flatMap(this::requireAffected)
+                : repository.updateNameIfVersion(anime.getId(), anime.getName(), anime.getVersion())
+                        .flatMap(rows -> rows == 0 ? conflictOrNotFound(anime.getId()) : Mono.<Void>empty());
+        return write.doOnSuccess(done -> changed(anime.getId()));
     }
 
     public Mono<Void> delete(int id) {
-        return findById(id)
-                .flatMap(repository::delete)
-                .then();
+        return repository.removeById(id)
+                .flatMap(this::requireAffected)
+                .doOnSuccess(done -> changed(id));
+    }
+
+    // only writes that happened are announced, a 404 or 409 changed nothing
+    private void changed(int id) {
+        cache.invalidate(id);
+        events.publishEvent(AnimeChangedEvent.of(id));
+    }
+
+    // the affected-row count of a conditional write is the only existence check we need
+    private Mono<Void> requireAffected(int rows) {
+        return rows == 0 ? monoResponseStatusNotFoundException() : Mono.empty();
+    }
+
+    // only a failed versioned write pays for the second query
+    private Mono<Void> conflictOrNotFound(int id) {
+        return repository.existsById(id)
+                .flatMap(exists -> exists ? this.<Void>monoResponseStatusConflictException() : this.<Void>monoResponseStatusNotFoundException());
     }
 }
@@ -0,0 +1,209 @@
+package com.academy.springwebfluxessentials.service;
+
+import com.academy.springwebfluxessentials.config.AnimeProperties;
+import com.academy.springwebfluxessentials.domain.Anime;
+import com.academy.springwebfluxessentials.domain.AnimeCatalogVersion;
+import com.academy.springwebfluxessentials.repository.AnimeRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+// the whole catalog as the bytes GET /animes would produce, kept off-heap and patched row by row on writes
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "anime.snapshot", name = "enabled", havingValue = "true")
+@RequiredArgsConstructor
+public class AnimeSnapshot implements MeterBinder {
+    private final AnimeRepository repository;
+    private final AnimeProperties properties;
+    private final ObjectMapper objectMapper;
+
+    // encoded rows by id, only touched by the single running rebuild
+    private final Map<Integer, byte[]> rows = new TreeMap<>();
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+    // bumped on every change, a rebuild only publishes if nothing changed while it ran
+    private final AtomicLong generation = new AtomicLong();
+
+    private final Object lock = new Object();
+    private Set<Integer> dirty = new HashSet<>();
+    private boolean reloadAll = true;
+
+    private volatile Snapshot current;
+
+    // null while the snapshot is being built or is behind a write, callers then take the regular path
+    public Snapshot current() {
+        return current;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        scheduleRebuild(0);
+    }
+
+    @EventListener
+    public void onChanged(AnimeChangedEvent event) {
+        generation.incrementAndGet();
+        current = null;
+        synchronized (lock) {
+            if (event.isAll()) {
+                reloadAll = true;
+            } else {
+                dirty.addAll(event.getIds());
+            }
+        }
+        scheduleRebuild(properties.getSnapshot().getRebuildDelay().toMillis());
+    }
+
+    private void scheduleRebuild(long delayMillis) {
+        if (rebuilding.compareAndSet(false, true)) {
+            Schedulers.parallel().schedule(this::rebuild, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void rebuild() {
+        var startedAt = generation.get();
+        Set<Integer> ids;
+        boolean all;
+        synchronized (lock) {
+            ids = dirty;
+            all = reloadAll;
+            dirty = new HashSet<>();
+            reloadAll = false;
+        }
+
+        repository.findCatalogVersion()
+                .defaultIfEmpty(new AnimeCatalogVersion(0, Instant.EPOCH))
+                .flatMap(catalog -> (all ? reloadAll() : reload(ids)).then(Mono.fromCallable(() -> assemble(catalog))))
+                .subscribe(snapshot -> {
+                    if (generation.get() == startedAt) {
+                        current = snapshot;
+                    }
+                }, error -> {
+                    log.warn("Anime snapshot rebuild failed, retrying from scratch", error);
+                    synchronized (lock) {
+                        reloadAll = true;
+                    }
+                    rebuilding.set(false);
+                    scheduleRebuild(properties.getSnapshot().getRetryDelay().toMillis());
+                }, () -> {
+                    rebuilding.set(false);
+                    if (hasPendingChanges()) {
+                        scheduleRebuild(properties.getSnapshot().getRebuildDelay().toMillis());
+                    }
+                });
+    }
+
+    private boolean hasPendingChanges() {
+        synchronized (lock) {
+            return reloadAll || !dirty.isEmpty();
+        }
+    }
+
+    private Mono<Void> reloadAll() {
+        var fetchSize = properties.getListing().getFetchSize();
+        return Mono.fromRunnable(rows::clear)
+                .thenMany(repository.streamAll(fetchSize).limitRate(fetchSize))
+                .doOnNext(anime -> rows.put(anime.getId(), encode(anime)))
+                .then();
+    }
+
+    private Mono<Void> reload(Set<Integer> ids) {
+        if (ids.isEmpty()) {
+            return Mono.empty();
+        }
+        var missing = new HashSet<>(ids);
+        return repository.findAllByIds(ids.toArray(Integer[]::new))
+                .doOnNext(anime -> {
+                    missing.remove(anime.getId());
+                    rows.put(anime.getId(), encode(anime));
+                })
+                .then(Mono.fromRunnable(() -> missing.forEach(rows::remove)));
+    }
+
+    private byte[] encode(Anime anime) {
+        try {
+            return objectMapper.writeValueAsBytes(anime);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not encode anime " + anime.getId(), e);
+        }
+    }
+
+    private Snapshot assemble(AnimeCatalogVersion catalog) {
+        var length = 2 + Math.max(0, rows.size() - 1);
+        for (var row : rows.values()) {
+            length += row.length;
+        }
+        var json = ByteBuffer.allocateDirect(length);
+        json.put((byte) '[');
+        var first = true;
+        for (var row : rows.values()) {
+            if (!first) {
+                json.put((byte) ',');
+            }
+            json.put(row);
+            first = false;
+        }
+        json.put((byte) ']').flip();
+
+        var gzip = properties.getSnapshot().isGzip() ? gzip(json.duplicate()) : null;
+        return new Snapshot(catalog.getVersion(), catalog.getUpdatedAt(), json, gzip);
+    }
+
+    private static ByteBuffer gzip(ByteBuffer json) {
+        var bytes = new byte[json.remaining()];
+        json.get(bytes);
+        var out = new ByteArrayOutputStream(bytes.length / 4 + 64);
+        try (var gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        var compressed = out.toByteArray();
+        return ByteBuffer.allocateDirect(compressed.length).put(compressed).flip();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("anime.snapshot.size", this, snapshot -> {
+                    var value = snapshot.current;
+                    return value == null ? 0 : value.getJson().capacity();
+                })
+                .description("Encoded size of the served catalog snapshot, 0 while it is stale")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    @Value
+    public static class Snapshot {
+        long version;
+        Instant updatedAt;
+        // read with duplicate(), the positions are shared
+        ByteBuffer json;
+        ByteBuffer gzip;
+    }
+}
@@ -0,0 +1,205 @@
+package com.academy.springwebfluxessentials.service;
+
+import com.academy.springwebfluxessentials.config.AnimeProperties;
+import com.academy.springwebfluxessentials.config.WebFluxConfig;
+import com.academy.springwebfluxessentials.domain.AnimeImportResult;
+import com.academy.springwebfluxessentials.repository.AnimeRepository;
+import com.academy.springwebfluxessentials.routing.ReadPreference;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.StringDecoder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.stream.Collectors;
+
+@Service
+@RequiredArgsConstructor
+public class AnimeTransferService {
+    private static final String CSV_HEADER = "id,name";
+    // line breaks are kept so a quoted csv name that spans lines is put back together exactly
+    private static final StringDecoder LINE_DECODER = StringDecoder.allMimeTypes(List.of("\n"), false);
+
+    private final AnimeRepository repository;
+    private final AnimeProperties properties;
+    private final AnimeCache cache;
+    private final TransactionalOperator transactionalOperator;
+    private final ObjectMapper objectMapper;
+    private final ApplicationEventPublisher events;
+
+    public Flux<DataBuffer> export(MediaType format, DataBufferFactory bufferFactory) {
+        var fetchSize = properties.getListing().getFetchSize();
+        var ndjson = WebFluxConfig.APPLICATION_NDJSON.equalsTypeAndSubtype(format);
+        BiFunction<Integer, String, String> formatter = ndjson ? this::ndjsonLine : this::csvLine;
+
+        var rows = repository.streamRows(fetchSize, formatter);
+        var lines = ndjson ? rows : Flux.just(CSV_HEADER + "\n").concatWith(rows);
+        return lines
+                .limitRate(fetchSize)
+                .map(line -> bufferFactory.wrap(line.getBytes(StandardCharsets.UTF_8)))
+                .subscriberContext(ReadPreference.REPLICA::putIfAbsent);
+    }
+
+    public Mono<AnimeImportResult> importAnimes(Flux<DataBuffer> body, MediaType format) {
+        var ndjson = WebFluxConfig.APPLICATION_NDJSON.equalsTypeAndSubtype(format);
+        var lines = LINE_DECODER.decode(body, ResolvableType.forClass(String.class), format, Collections.emptyMap());
+        return (ndjson ? lines : csvRecords(lines))
+                .filter(line -> !line.isBlank())
+                .filter(line -> ndjson || !CSV_HEADER.equalsIgnoreCase(line.trim()))
+                .map(line -> ndjson ? parseNdjson(line) : parseCsv(line))
+                .buffer(properties.getBulk().getChunkSize())
+                .concatMap(this::importChunk)
+                .reduce(0L, Long::sum)
+                .flatMap(rows -> repository.syncIdSequence().thenReturn(rows))
+                .as(transactionalOperator::transactional)
+                .doOnSuccess(rows -> {
+                    cache.invalidateAll();
+                    events.publishEvent(AnimeChangedEvent.all());
+                })
+                .map(AnimeImportResult::new);
+    }
+
+    // a quoted name may span lines, so lines are joined until their quotes balance
+    private Flux<String> csvRecords(Flux<String> lines) {
+        return Flux.defer(() -> {
+            var record = new StringBuilder();
+            var quotes = new AtomicLong();
+            return lines.<String>handle((line, sink) -> {
+                record.append(line);
+                if (quotes.addAndGet(line.chars().filter(c -> c == '"').count()) % 2 == 0) {
+                    sink.next(stripLineBreak(record.toString()));
+                    record.setLength(0);
+                }
+            }).concatWith(Mono.defer(() -> record.length() == 0 ? Mono.empty() : Mono.error(invalidLine(record.toString()))));
+        });
+    }
+
+    private static String stripLineBreak(String record) {
+        var end = record.length();
+        if (end > 0 && record.charAt(end - 1) == '\n') {
+            end--;
+        }
+        if (end > 0 && record.charAt(end - 1) == '\r') {
+            end--;
+        }
+        return record.substring(0, end);
+    }
+
+    private Mono<Long> importChunk(List<ImportRow> rows) {
+        // one upsert cannot touch a row twice, so within a chunk the last line for an id wins
+        var withId = rows.stream()
+                .filter(row -> row.getId() != null)
+                .collect(Collectors.toMap(ImportRow::getId, row -> row, (first, last) -> last, LinkedHashMap::new))
+                .values();
+        var withoutId = rows.stream().filter(row -> row.getId() == null).collect(Collectors.toList());
+
+        var upserted = withId.isEmpty()
+                ? Mono.just(0L)
+                : repository.upsertAll(withId.stream().map(ImportRow::getId).toArray(Integer[]::new),
+                        withId.stream().map(ImportRow::getName).toArray(String[]::new))
+                .map(Integer::longValue);
+        var inserted = withoutId.isEmpty()
+                ? Mono.just(0L)
+                : repository.insertNames(withoutId.stream().map(ImportRow::getName).toArray(String[]::new))
+                .count();
+        // one after the other, both statements share the transaction's connection
+        return upserted.flatMap(upsertedRows -> inserted.map(insertedRows -> upsertedRows + insertedRows));
+    }
+
+    private String csvLine(Integer id, String name) {
+        var needsQuotes = name.indexOf(',') >= 0 || name.indexOf('"') >= 0 || name.indexOf('\n') >= 0 || name.indexOf('\r') >= 0;
+        return id + "," + (needsQuotes ? '"' + name.replace("\"", "\"\"") + '"' : name) + "\n";
+    }
+
+    private String ndjsonLine(Integer id, String name) {
+        return "{\"id\":" + id + ",\"name\":\"" + new String(JsonStringEncoder.getInstance().quoteAsString(name)) + "\"}\n";
+    }
+
+    // "id,name" or just "name"; a quoted name may contain commas, doubled quotes and line breaks
+    private ImportRow parseCsv(String line) {
+        var fields = new ArrayList<String>(2);
+        var field = new StringBuilder();
+        var quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            var c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',' && fields.isEmpty()) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+
+        if (fields.size() == 1) {
+            return row(null, fields.get(0), line);
+        }
+        var id = fields.get(0).isBlank() ? null : parseId(fields.get(0).trim(), line);
+        return row(id, fields.get(1), line);
+    }
+
+    private ImportRow parseNdjson(String line) {
+        try {
+            var node = objectMapper.readTree(line);
+            var id = node.hasNonNull("id") ? node.get("id").asInt() : null;
+            return row(id, node.path("name").asText(), line);
+        } catch (JsonProcessingException e) {
+            throw invalidLine(line);
+        }
+    }
+
+    private Integer parseId(String id, String line) {
+        try {
+            return Integer.valueOf(id);
+        } catch (NumberFormatException e) {
+            throw invalidLine(line);
+        }
+    }
+
+    private ImportRow row(Integer id, String name, String line) {
+        if (name == null || name.isEmpty()) {
+            throw invalidLine(line);
+        }
+        return new ImportRow(id, name);
+    }
+
+    private ResponseStatusException invalidLine(String line) {
+        return new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid anime line: " + line);
+    }
+
+    @Value
+    private static class ImportRow {
+        Integer id;
+        String name;
+    }
+}
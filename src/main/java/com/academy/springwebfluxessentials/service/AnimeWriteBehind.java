@@ -0,0 +1,216 @@
+package com.academy.springwebfluxessentials.service;
+
+import com.academy.springwebfluxessentials.config.AnimeProperties;
+import com.academy.springwebfluxessentials.domain.Anime;
+import com.academy.springwebfluxessentials.exception.StacklessResponseStatusException;
+import com.academy.springwebfluxessentials.repository.AnimeRepository;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// buffers inserts and writes them as one multi-row statement per batch; inert unless anime.write-behind.enabled
+@Slf4j
+@Component
+public class AnimeWriteBehind implements MeterBinder, DisposableBean {
+    private final AnimeRepository repository;
+    private final AnimeCache cache;
+    private final ApplicationEventPublisher events;
+    private final AnimeProperties.WriteBehind config;
+    private final BlockingQueue<PendingInsert> queue;
+    private final AtomicBoolean flushing = new AtomicBoolean();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final Disposable ticker;
+
+    private volatile boolean accepting;
+    private Timer flushTimer;
+    private DistributionSummary batchSizes;
+
+    @Autowired
+    public AnimeWriteBehind(AnimeRepository repository, AnimeProperties properties, AnimeCache cache, ApplicationEventPublisher events) {
+        this(repository, properties, cache, events, Schedulers.parallel());
+    }
+
+    AnimeWriteBehind(AnimeRepository repository, AnimeProperties properties, AnimeCache cache, ApplicationEventPublisher events, Scheduler scheduler) {
+        this.repository = repository;
+        this.cache = cache;
+        this.events = events;
+        this.config = properties.getWriteBehind();
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, config.getCapacity()));
+        this.accepting = config.isEnabled();
+        var interval = config.getFlushInterval().toMillis();
+        this.ticker = config.isEnabled()
+                ? scheduler.schedulePeriodically(this::flush, interval, interval, TimeUnit.MILLISECONDS)
+                : Disposables.disposed();
+    }
+
+    public boolean isEnabled() {
+        return config.isEnabled();
+    }
+
+    // with awaitFlush the anime comes back with its id once written, otherwise as soon as it is queued and without one
+    public Mono<Anime> insert(Anime anime, boolean awaitFlush) {
+        return Mono.defer(() -> {
+            if (!awaitFlush) {
+                return offer(new PendingInsert(anime, null)) ? Mono.just(anime) : this.<Anime>full();
+            }
+            return Mono.<Anime>create(sink -> {
+                if (!offer(new PendingInsert(anime, sink))) {
+                    sink.error(fullException());
+                }
+            });
+        });
+    }
+
+    private boolean offer(PendingInsert insert) {
+        if (!accepting || !queue.offer(insert)) {
+            rejected.increment();
+            return false;
+        }
+        if (queue.size() >= config.getMaxBatchSize()) {
+            flush();
+        }
+        return true;
+    }
+
+    private <T> Mono<T> full() {
+        return Mono.error(fullException());
+    }
+
+    private StacklessResponseStatusException fullException() {
+        return new StacklessResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "Anime write buffer is full");
+    }
+
+    private void flush() {
+        if (!flushing.compareAndSet(false, true)) {
+            return;
+        }
+        writeBatch()
+                .doFinally(signal -> {
+                    flushing.set(false);
+                    if (queue.size() >= config.getMaxBatchSize()) {
+                        flush();
+                    }
+                })
+                .subscribe();
+    }
+
+    // callers hold the flushing flag, so batches are written one at a time and in queue order
+    private Mono<Void> writeBatch() {
+        var batch = new ArrayList<PendingInsert>(config.getMaxBatchSize());
+        queue.drainTo(batch, config.getMaxBatchSize());
+        if (batch.isEmpty()) {
+            return Mono.empty();
+        }
+        var names = batch.stream().map(insert -> insert.getAnime().getName()).toArray(String[]::new);
+        var start = System.nanoTime();
+        return repository.insertNames(names)
+                .collectList()
+                .doOnNext(ids -> written(batch, ids))
+                .doOnError(error -> failedBatch(batch, error))
+                .doFinally(signal -> {
+                    if (flushTimer != null) {
+                        flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                        batchSizes.record(batch.size());
+                    }
+                })
+                .onErrorResume(error -> Mono.empty())
+                .then();
+    }
+
+    private void written(List<PendingInsert> batch, List<Integer> ids) {
+        for (var i = 0; i < batch.size(); i++) {
+            var id = ids.get(i);
+            cache.invalidate(id);
+            var sink = batch.get(i).getSink();
+            if (sink != null) {
+                sink.success(batch.get(i).getAnime().withId(id).withVersion(0L));
+            }
+        }
+        events.publishEvent(AnimeChangedEvent.of(new HashSet<>(ids)));
+    }
+
+    private void failedBatch(List<PendingInsert> batch, Throwable error) {
+        failed.add(batch.size());
+        // inserts without a sink were answered when they were queued, so their clients believe they were saved
+        var acknowledged = batch.stream().filter(insert -> insert.getSink() == null).count();
+        log.error("Write-behind batch of {} animes failed, {} of them were already acknowledged", batch.size(), acknowledged, error);
+        batch.stream()
+                .map(PendingInsert::getSink)
+                .filter(Objects::nonNull)
+                .forEach(sink -> sink.error(error));
+    }
+
+    // stops taking inserts and writes out what is queued before the connection pool goes away
+    @Override
+    public void destroy() {
+        accepting = false;
+        ticker.dispose();
+        var deadline = System.nanoTime() + config.getShutdownTimeout().toNanos();
+        while (!queue.isEmpty() && System.nanoTime() < deadline) {
+            if (flushing.compareAndSet(false, true)) {
+                try {
+                    writeBatch().block(config.getShutdownTimeout());
+                } finally {
+                    flushing.set(false);
+                }
+            } else {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            }
+        }
+        if (!queue.isEmpty()) {
+            log.warn("Write-behind shut down with {} animes still queued", queue.size());
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        flushTimer = Timer.builder("anime.writebehind.flush")
+                .description("Time to write one write-behind batch")
+                .register(registry);
+        batchSizes = DistributionSummary.builder("anime.writebehind.batch.size")
+                .register(registry);
+        Gauge.builder("anime.writebehind.queued", queue, BlockingQueue::size)
+                .register(registry);
+        FunctionCounter.builder("anime.writebehind.rejected", rejected, LongAdder::sum)
+                .description("Inserts refused because the buffer was full")
+                .register(registry);
+        FunctionCounter.builder("anime.writebehind.failed", failed, LongAdder::sum)
+                .description("Inserts lost in failed batches")
+                .register(registry);
+    }
+
+    @Value
+    private static class PendingInsert {
+        Anime anime;
+        // null when the caller was acknowledged on enqueue
+        MonoSink<Anime> sink;
+    }
+}
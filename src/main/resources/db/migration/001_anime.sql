@@ -0,0 +1,5 @@
+CREATE TABLE IF NOT EXISTS anime
+(
+    id   SERIAL PRIMARY KEY,
+    name TEXT NOT NULL
+);
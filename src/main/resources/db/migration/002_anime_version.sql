@@ -0,0 +1,83 @@
+-- per row: bumped on every update, whichever statement does it
+ALTER TABLE anime ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0;
+ALTER TABLE anime ADD COLUMN IF NOT EXISTS updated_at TIMESTAMPTZ NOT NULL DEFAULT now();
+
+CREATE OR REPLACE FUNCTION anime_touch() RETURNS TRIGGER AS
+$$
+BEGIN
+    NEW.version := OLD.version + 1;
+    NEW.updated_at := now();
+    RETURN NEW;
+END
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS anime_touch ON anime;
+CREATE TRIGGER anime_touch
+    BEFORE UPDATE ON anime
+    FOR EACH ROW EXECUTE PROCEDURE anime_touch();
+
+-- per table: a version that changes with any committed write, so the collection can be validated without reading it;
+-- striped over 16 rows picked by backend pid, so writers on different connections never wait on the same row lock.
+-- the catalog version is the sum of the slots: each committed write raises it, whatever order transactions commit in
+CREATE TABLE IF NOT EXISTS anime_catalog
+(
+    slot       INT PRIMARY KEY CHECK (slot BETWEEN 0 AND 15),
+    version    BIGINT      NOT NULL,
+    updated_at TIMESTAMPTZ NOT NULL
+);
+-- databases created with the single-row catalog keep their version in slot 0
+DO
+$$
+BEGIN
+    IF EXISTS (SELECT 1 FROM information_schema.columns WHERE table_name = 'anime_catalog' AND column_name = 'id') THEN
+        ALTER TABLE anime_catalog DROP CONSTRAINT IF EXISTS anime_catalog_id_check;
+        ALTER TABLE anime_catalog RENAME COLUMN id TO slot;
+        UPDATE anime_catalog SET slot = 0;
+        ALTER TABLE anime_catalog ADD CHECK (slot BETWEEN 0 AND 15);
+    END IF;
+END
+$$;
+INSERT INTO anime_catalog (slot, version, updated_at)
+SELECT slot, 0, now() FROM generate_series(0, 15) slot
+ON CONFLICT (slot) DO NOTHING;
+
+-- statements that matched no rows (a 404 or 409) leave the catalog alone
+CREATE OR REPLACE FUNCTION anime_catalog_touch() RETURNS TRIGGER AS
+$$
+BEGIN
+    IF TG_OP = 'DELETE' THEN
+        IF NOT EXISTS (SELECT 1 FROM old_rows) THEN
+            RETURN NULL;
+        END IF;
+    ELSIF TG_OP <> 'TRUNCATE' THEN
+        IF NOT EXISTS (SELECT 1 FROM new_rows) THEN
+            RETURN NULL;
+        END IF;
+    END IF;
+    UPDATE anime_catalog SET version = version + 1, updated_at = now() WHERE slot = pg_backend_pid() % 16;
+    RETURN NULL;
+END
+$$ LANGUAGE plpgsql;
+
+-- transition tables allow only one event per trigger
+DROP TRIGGER IF EXISTS anime_catalog_touch ON anime;
+
+DROP TRIGGER IF EXISTS anime_catalog_touch_insert ON anime;
+CREATE TRIGGER anime_catalog_touch_insert
+    AFTER INSERT ON anime REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE PROCEDURE anime_catalog_touch();
+
+DROP TRIGGER IF EXISTS anime_catalog_touch_update ON anime;
+CREATE TRIGGER anime_catalog_touch_update
+    AFTER UPDATE ON anime REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE PROCEDURE anime_catalog_touch();
+
+DROP TRIGGER IF EXISTS anime_catalog_touch_delete ON anime;
+CREATE TRIGGER anime_catalog_touch_delete
+    AFTER DELETE ON anime REFERENCING OLD TABLE AS old_rows
+    FOR EACH STATEMENT EXECUTE PROCEDURE anime_catalog_touch();
+
+DROP TRIGGER IF EXISTS anime_catalog_touch_truncate ON anime;
+CREATE TRIGGER anime_catalog_touch_truncate
+    AFTER TRUNCATE ON anime
+    FOR EACH STATEMENT EXECUTE PROCEDURE anime_catalog_touch();
@@ -0,0 +1,6 @@
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+-- prefix matches of any length: lower(name) LIKE 'abc%'
+CREATE INDEX IF NOT EXISTS anime_name_prefix_idx ON anime (lower(name) text_pattern_ops);
+-- fuzzy matches: name % 'abc'
+CREATE INDEX IF NOT EXISTS anime_name_trgm_idx ON anime USING gin (name gin_trgm_ops);
@@ -0,0 +1,50 @@
+-- every committed write is announced on anime_changes, whichever node or tool made it;
+-- NOTIFY payloads are capped at 8000 bytes, so large statements announce a change of everything instead
+CREATE OR REPLACE FUNCTION anime_notify() RETURNS TRIGGER AS
+$$
+DECLARE
+    ids INT[];
+BEGIN
+    IF TG_OP = 'DELETE' THEN
+        SELECT array_agg(id) INTO ids FROM (SELECT id FROM old_rows LIMIT 501) changed;
+    ELSE
+        SELECT array_agg(id) INTO ids FROM (SELECT id FROM new_rows LIMIT 501) changed;
+    END IF;
+    IF ids IS NULL THEN
+        RETURN NULL;
+    END IF;
+    PERFORM pg_notify('anime_changes', CASE
+        WHEN cardinality(ids) > 500 THEN '{"all":true}'
+        ELSE json_build_object('ids', ids)::text END);
+    RETURN NULL;
+END
+$$ LANGUAGE plpgsql;
+
+-- transition tables allow only one event per trigger
+DROP TRIGGER IF EXISTS anime_notify_insert ON anime;
+CREATE TRIGGER anime_notify_insert
+    AFTER INSERT ON anime REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE PROCEDURE anime_notify();
+
+DROP TRIGGER IF EXISTS anime_notify_update ON anime;
+CREATE TRIGGER anime_notify_update
+    AFTER UPDATE ON anime REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE PROCEDURE anime_notify();
+
+DROP TRIGGER IF EXISTS anime_notify_delete ON anime;
+CREATE TRIGGER anime_notify_delete
+    AFTER DELETE ON anime REFERENCING OLD TABLE AS old_rows
+    FOR EACH STATEMENT EXECUTE PROCEDURE anime_notify();
+
+CREATE OR REPLACE FUNCTION anime_notify_truncate() RETURNS TRIGGER AS
+$$
+BEGIN
+    PERFORM pg_notify('anime_changes', '{"all":true}');
+    RETURN NULL;
+END
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS anime_notify_truncate ON anime;
+CREATE TRIGGER anime_notify_truncate
+    AFTER TRUNCATE ON anime
+    FOR EACH STATEMENT EXECUTE PROCEDURE anime_notify_truncate();
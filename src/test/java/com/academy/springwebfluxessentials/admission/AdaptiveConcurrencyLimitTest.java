@@ -0,0 +1,62 @@
+package com.academy.springwebfluxessentials.admission;
+
+import com.academy.springwebfluxessentials.config.AnimeProperties;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+class AdaptiveConcurrencyLimitTest {
+    private static final long FAST = Duration.ofMillis(1).toNanos();
+    private static final long SLOW = Duration.ofSeconds(1).toNanos();
+
+    private AdaptiveConcurrencyLimit limit;
+
+    @BeforeEach
+    void setUp() {
+        var config = new AnimeProperties.Limit(2, Duration.ofMillis(100));
+        config.setMinLimit(1);
+        limit = new AdaptiveConcurrencyLimit(config);
+    }
+
+    @Test
+    @DisplayName("tryAcquire rejects once the limit is in flight")
+    void tryAcquire() {
+        Assertions.assertTrue(limit.tryAcquire());
+        Assertions.assertTrue(limit.tryAcquire());
+        Assertions.assertFalse(limit.tryAcquire());
+
+        limit.release(FAST, false);
+        Assertions.assertTrue(limit.tryAcquire());
+    }
+
+    @Test
+    @DisplayName("release grows the limit on fast responses while it is in use")
+    void release() {
+        for (var i = 0; i < 100; i++) {
+            limit.tryAcquire();
+            limit.tryAcquire();
+            limit.release(FAST, true);
+            limit.release(FAST, true);
+        }
+
+        Assertions.assertTrue(limit.getLimit() > 2);
+        Assertions.assertEquals(0, limit.getInFlight());
+    }
+
+    @Test
+    @DisplayName("release backs off once on a burst of slow responses")
+    void release_2() {
+        var limit = new AdaptiveConcurrencyLimit(new AnimeProperties.Limit(100, Duration.ofMillis(100)));
+        for (var i = 0; i < 10; i++) {
+            limit.tryAcquire();
+        }
+        for (var i = 0; i < 10; i++) {
+            limit.release(SLOW, true);
+        }
+
+        Assertions.assertEquals(90, limit.getLimit());
+    }
+}
@@ -0,0 +1,93 @@
+package com.academy.springwebfluxessentials.admission;
+
+import com.academy.springwebfluxessentials.config.AnimeProperties;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+class AdmissionControlFilterTest {
+    private static final Duration SLOW = Duration.ofMillis(300);
+
+    private AdmissionControlFilter filter;
+
+    // the first exchange loads the mock and codec classes, which would count as a slow response
+    @BeforeAll
+    static void warmUp() {
+        StepVerifier.create(new AdmissionControlFilter(new AnimeProperties())
+                        .filter(MockServerWebExchange.from(MockServerHttpRequest.get("/animes")), firstByteAfter(Duration.ZERO)))
+                .verifyComplete();
+    }
+
+    @BeforeEach
+    void setUp() {
+        var properties = new AnimeProperties();
+        properties.getAdmission().getRead().setInitialLimit(10);
+        properties.getAdmission().getRead().setLatencyThreshold(Duration.ofMillis(150));
+        filter = new AdmissionControlFilter(properties);
+    }
+
+    @Test
+    @DisplayName("A listing that streams for long after its first byte does not lower the lookup limit")
+    void filter() {
+        run("/animes/1", firstByteAfter(Duration.ZERO));
+        for (var i = 0; i < 3; i++) {
+            run("/animes", streamingFor(SLOW));
+        }
+
+        Assertions.assertEquals(10, filter.limitOf("GET /animes/{id}"));
+        Assertions.assertEquals(10, filter.limitOf("GET /animes"));
+    }
+
+    @Test
+    @DisplayName("A route whose first byte is slow only lowers its own limit")
+    void filter_2() {
+        run("/animes", firstByteAfter(Duration.ZERO));
+        run("/animes/1", firstByteAfter(SLOW));
+
+        Assertions.assertEquals(9, filter.limitOf("GET /animes/{id}"));
+        Assertions.assertEquals(10, filter.limitOf("GET /animes"));
+    }
+
+    @Test
+    @DisplayName("Only /animes and the paths below it are admission controlled")
+    void filter_3() {
+        run("/animesXYZ", firstByteAfter(Duration.ZERO));
+        run("/animes/search", firstByteAfter(Duration.ZERO));
+
+        Assertions.assertEquals(-1, filter.limitOf("GET /animesXYZ"));
+        Assertions.assertEquals(-1, filter.limitOf("GET /animes/{id}"));
+        Assertions.assertEquals(10, filter.limitOf("GET /animes/search"));
+    }
+
+    private void run(String path, WebFilterChain chain) {
+        StepVerifier.create(filter.filter(MockServerWebExchange.from(MockServerHttpRequest.get(path)), chain))
+                .verifyComplete();
+    }
+
+    private static WebFilterChain firstByteAfter(Duration delay) {
+        return exchange -> Mono.delay(delay)
+                .then(exchange.getResponse().writeWith(Mono.just(chunk(exchange.getResponse().bufferFactory()))));
+    }
+
+    private static WebFilterChain streamingFor(Duration duration) {
+        return exchange -> exchange.getResponse().writeWith(Flux.just(chunk(exchange.getResponse().bufferFactory()))
+                .concatWith(Mono.delay(duration).map(tick -> chunk(exchange.getResponse().bufferFactory()))));
+    }
+
+    private static DataBuffer chunk(DataBufferFactory factory) {
+        return factory.wrap("{}".getBytes(StandardCharsets.UTF_8));
+    }
+}
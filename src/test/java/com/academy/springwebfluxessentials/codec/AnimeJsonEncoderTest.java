@@ -0,0 +1,79 @@
+package com.academy.springwebfluxessentials.codec;
+
+import com.academy.springwebfluxessentials.config.WebFluxConfig;
+import com.academy.springwebfluxessentials.domain.Anime;
+import com.academy.springwebfluxessentials.util.AnimeCreator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+
+class AnimeJsonEncoderTest {
+    private static final ResolvableType ANIME_TYPE = ResolvableType.forClass(Anime.class);
+
+    private final AnimeJsonEncoder encoder = new AnimeJsonEncoder();
+    // configured like the application's mapper
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json()
+            .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .build();
+
+    private final List<Anime> animes = List.of(
+            AnimeCreator.createValidAnime(),
+            Anime.builder().id(-42).name("quote \" backslash \\ tab \t bell \u0007 del \u007F").build(),
+            Anime.builder().id(Integer.MAX_VALUE).name("進撃の巨人 😀 é").version(0L).updatedAt(Instant.parse("2020-07-01T10:00:00.120Z")).build(),
+            Anime.builder().name(null).build());
+
+    @Test
+    @DisplayName("A single anime is written exactly like the ObjectMapper writes it")
+    void encodeValue() throws Exception {
+        for (var anime : animes) {
+            Assertions.assertEquals(objectMapper.writeValueAsString(anime), encode(Mono.just(anime), MediaType.APPLICATION_JSON));
+        }
+    }
+
+    @Test
+    @DisplayName("A flux of anime is written as the same json array")
+    void encode() throws Exception {
+        Assertions.assertEquals(objectMapper.writeValueAsString(animes), encode(Flux.fromIterable(animes), MediaType.APPLICATION_JSON));
+        Assertions.assertEquals("[]", encode(Flux.empty(), MediaType.APPLICATION_JSON));
+    }
+
+    @Test
+    @DisplayName("A flux of anime is written one document per line for ndjson")
+    void encode_2() throws Exception {
+        var expected = new StringBuilder();
+        for (var anime : animes) {
+            expected.append(objectMapper.writeValueAsString(anime)).append('\n');
+        }
+        Assertions.assertEquals(expected.toString(), encode(Flux.fromIterable(animes), WebFluxConfig.APPLICATION_NDJSON));
+    }
+
+    // a Mono goes in as it is, the encoder writes it as a single value rather than an array
+    private String encode(Publisher<Anime> input, MimeType mimeType) {
+        return DataBufferUtils.join(encoder.encode(input, new DefaultDataBufferFactory(), ANIME_TYPE, mimeType, Collections.emptyMap()))
+                .map(this::asString)
+                .block();
+    }
+
+    private String asString(DataBuffer buffer) {
+        var value = buffer.toString(StandardCharsets.UTF_8);
+        DataBufferUtils.release(buffer);
+        return value;
+    }
+}
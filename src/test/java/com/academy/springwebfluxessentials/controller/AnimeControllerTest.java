@@ -1,7 +1,19 @@
 package com.academy.springwebfluxessentials.controller;
 
+import com.academy.springwebfluxessentials.config.WebFluxConfig;
 import com.academy.springwebfluxessentials.domain.Anime;
+import com.academy.springwebfluxessentials.domain.AnimeCatalogVersion;
+import com.academy.springwebfluxessentials.domain.AnimeChange;
+import com.academy.springwebfluxessentials.domain.AnimeImportResult;
+import com.academy.springwebfluxessentials.domain.AnimeMultiGet;
+import com.academy.springwebfluxessentials.domain.AnimeOperation;
+import com.academy.springwebfluxessentials.domain.AnimeOperationResult;
+import com.academy.springwebfluxessentials.domain.AnimePage;
+import com.academy.springwebfluxessentials.service.AnimeBulkService;
+import com.academy.springwebfluxessentials.service.AnimeChangeFeed;
+import com.academy.springwebfluxessentials.service.AnimeChangedEvent;
 import com.academy.springwebfluxessentials.service.AnimeService;
+import com.academy.springwebfluxessentials.service.AnimeTransferService;
 import com.academy.springwebfluxessentials.util.AnimeCreator;
 import org.junit.jupiter.api.*;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -9,6 +21,10 @@ import org.mockito.ArgumentMatchers;
 import org.mockito.BDDMockito;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import reactor.blockhound.BlockHound;
 import reactor.blockhound.BlockingOperationError;
@@ -17,6 +33,10 @@ import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
 import reactor.test.StepVerifier;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
 
@@ -26,6 +46,12 @@ class AnimeControllerTest {
     private AnimeController controller;
     @Mock
     private AnimeService service;
+    @Mock
+    private AnimeBulkService bulkService;
+    @Mock
+    private AnimeTransferService transferService;
+    @Mock
+    private AnimeChangeFeed changeFeed;
 
     private final Anime anime = AnimeCreator.createValidAnime();
 
@@ -52,13 +78,22 @@ class AnimeControllerTest {
 
     @BeforeEach
     void setUp() {
+        BDDMockito.when(service.findCatalogVersion())
+                .thenReturn(Mono.just(new AnimeCatalogVersion(7, Instant.parse("2020-07-01T10:00:00Z"))));
+
         BDDMockito.when(service.findAll())
                 .thenReturn(Flux.just(anime));
 
+        BDDMockito.when(service.findPage(ArgumentMatchers.any(), ArgumentMatchers.anyInt()))
+                .thenReturn(Mono.just(new AnimePage(List.of(anime), null)));
+
         BDDMockito.when(service.findById(ArgumentMatchers.anyInt()))
                 .thenReturn(Mono.just(anime));
 
-        BDDMockito.when(service.save(ArgumentMatchers.any(Anime.class)))
+        BDDMockito.when(service.search(ArgumentMatchers.anyString(), ArgumentMatchers.any()))
+                .thenReturn(Flux.just(anime));
+
+        BDDMockito.when(service.save(ArgumentMatchers.any(Anime.class), ArgumentMatchers.anyBoolean()))
                 .thenReturn(Mono.just(anime));
 
         BDDMockito.when(service.delete(ArgumentMatchers.anyInt()))
@@ -66,21 +101,98 @@ class AnimeControllerTest {
 
         BDDMockito.when(service.update(ArgumentMatchers.any(Anime.class)))
                 .thenReturn(Mono.empty());
+
+        BDDMockito.when(bulkService.execute(ArgumentMatchers.any()))
+                .thenReturn(Flux.just(new AnimeOperationResult(0, AnimeOperation.Type.DELETE, 1, 204)));
+
+        BDDMockito.when(transferService.importAnimes(ArgumentMatchers.any(), ArgumentMatchers.any()))
+                .thenReturn(Mono.just(new AnimeImportResult(1)));
     }
 
     @Test
     @DisplayName("Find all returns a flux of anime")
     void findAll() {
-        StepVerifier.create(controller.listAll())
+        StepVerifier.create(controller.listAll().flatMapMany(ResponseEntity::getBody))
                 .expectSubscription()
                 .expectNext(anime)
                 .verifyComplete();
     }
 
+    @Test
+    @DisplayName("Find all is validated by the catalog version")
+    void findAll_2() {
+        StepVerifier.create(controller.listAll())
+                .expectSubscription()
+                .assertNext(response -> {
+                    Assertions.assertEquals("W/\"7\"", response.getHeaders().getETag());
+                    Assertions.assertEquals(Instant.parse("2020-07-01T10:00:00Z").toEpochMilli(), response.getHeaders().getLastModified());
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("List page returns a mono with a page of anime")
+    void listPage() {
+        StepVerifier.create(controller.listPage(null, 10, MockServerWebExchange.from(MockServerHttpRequest.get("/animes?limit=10"))).map(ResponseEntity::getBody))
+                .expectSubscription()
+                .expectNext(new AnimePage(List.of(anime), null))
+                .verifyComplete();
+    }
+
     @Test
     @DisplayName("Find by ID returns a mono with anime, when exists")
     void findById() {
+        StepVerifier.create(controller.findById(1).map(ResponseEntity::getBody))
+                .expectSubscription()
+                .expectNext(anime)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("Find by ID tags the anime with its version")
+    void findById_2() {
+        BDDMockito.when(service.findById(ArgumentMatchers.anyInt()))
+                .thenReturn(Mono.just(anime.withVersion(3L)));
+
         StepVerifier.create(controller.findById(1))
+                .expectSubscription()
+                .assertNext(response -> Assertions.assertEquals("\"3\"", response.getHeaders().getETag()))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("Multi-get returns the found animes and the missing ids")
+    void findAllById() {
+        var result = new AnimeMultiGet(List.of(anime), List.of(2));
+        BDDMockito.when(service.findAllById(List.of(1, 2)))
+                .thenReturn(Mono.just(result));
+
+        StepVerifier.create(controller.findAllById(List.of(1, 2)))
+                .expectSubscription()
+                .expectNext(result)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("Changes are streamed as server-sent events")
+    void changes() {
+        BDDMockito.when(changeFeed.changes())
+                .thenReturn(Flux.just(AnimeChangedEvent.of(1), AnimeChangedEvent.all()));
+        BDDMockito.when(changeFeed.heartbeat())
+                .thenReturn(Duration.ofHours(1));
+
+        StepVerifier.create(controller.changes())
+                .expectSubscription()
+                .assertNext(event -> Assertions.assertEquals(new AnimeChange(Set.of(1), false), event.data()))
+                .assertNext(event -> Assertions.assertEquals(new AnimeChange(null, true), event.data()))
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    @DisplayName("Search returns a flux of matching anime")
+    void search() {
+        StepVerifier.create(controller.search("naru", null))
                 .expectSubscription()
                 .expectNext(anime)
                 .verifyComplete();
@@ -91,9 +203,25 @@ class AnimeControllerTest {
     void save() {
         var toBeSaved = AnimeCreator.createAnimeTonBeSaved();
 
-        StepVerifier.create(controller.save(toBeSaved))
+        StepVerifier.create(controller.save(AnimeController.ACK_FLUSH, toBeSaved))
                 .expectSubscription()
-                .expectNext(anime)
+                .assertNext(response -> {
+                    Assertions.assertEquals(HttpStatus.CREATED, response.getStatusCode());
+                    Assertions.assertEquals(anime, response.getBody());
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("save returns 202 when a write-behind insert is acknowledged on enqueue")
+    void save_2() {
+        var toBeSaved = AnimeCreator.createAnimeTonBeSaved();
+        BDDMockito.when(service.save(ArgumentMatchers.any(Anime.class), ArgumentMatchers.eq(false)))
+                .thenReturn(Mono.just(toBeSaved));
+
+        StepVerifier.create(controller.save(AnimeController.ACK_ENQUEUE, toBeSaved))
+                .expectSubscription()
+                .assertNext(response -> Assertions.assertEquals(HttpStatus.ACCEPTED, response.getStatusCode()))
                 .verifyComplete();
     }
 
@@ -106,13 +234,47 @@ class AnimeControllerTest {
     }
 
 
+    @Test
+    @DisplayName("bulk returns one result per operation")
+    void bulk() {
+        var operations = Flux.just(new AnimeOperation(AnimeOperation.Type.DELETE, 1, null));
+
+        StepVerifier.create(controller.bulk(operations))
+                .expectSubscription()
+                .expectNext(new AnimeOperationResult(0, AnimeOperation.Type.DELETE, 1, 204))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("import returns how many rows were loaded")
+    void importAnimes() {
+        var request = MockServerHttpRequest.post("/animes/import")
+                .contentType(WebFluxConfig.TEXT_CSV)
+                .build();
+
+        StepVerifier.create(controller.importAnimes(request, Flux.empty()))
+                .expectSubscription()
+                .expectNext(new AnimeImportResult(1))
+                .verifyComplete();
+
+        BDDMockito.verify(transferService).importAnimes(ArgumentMatchers.any(), ArgumentMatchers.eq(WebFluxConfig.TEXT_CSV));
+    }
+
     @Test
     @DisplayName("update an anime and returns empty mono when successful")
     void update() {
-        StepVerifier.create(controller.update(1, AnimeCreator.createValidAnime()))
+        StepVerifier.create(controller.update(1, null, AnimeCreator.createValidAnime()))
                 .expectSubscription()
                 .verifyComplete();
     }
 
+    @Test
+    @DisplayName("update takes the expected version from If-Match")
+    void update_2() {
+        StepVerifier.create(controller.update(1, "\"3\"", AnimeCreator.createValidAnime()))
+                .expectSubscription()
+                .verifyComplete();
 
+        BDDMockito.verify(service).update(anime.withVersion(3L));
+    }
 }
\ No newline at end of file
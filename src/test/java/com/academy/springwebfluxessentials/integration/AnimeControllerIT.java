@@ -1,9 +1,26 @@
 package com.academy.springwebfluxessentials.integration;
 
+import com.academy.springwebfluxessentials.config.AnimeProperties;
+import com.academy.springwebfluxessentials.config.WebFluxConfig;
 import com.academy.springwebfluxessentials.domain.Anime;
+import com.academy.springwebfluxessentials.domain.AnimeCatalogVersion;
+import com.academy.springwebfluxessentials.domain.AnimeImportResult;
+import com.academy.springwebfluxessentials.domain.AnimeMultiGet;
+import com.academy.springwebfluxessentials.domain.AnimeOperation;
+import com.academy.springwebfluxessentials.domain.AnimeOperationResult;
+import com.academy.springwebfluxessentials.domain.AnimePage;
 import com.academy.springwebfluxessentials.repository.AnimeRepository;
+import com.academy.springwebfluxessentials.service.AnimeBulkService;
+import com.academy.springwebfluxessentials.service.AnimeCache;
+import com.academy.springwebfluxessentials.service.AnimeChangeFeed;
+import com.academy.springwebfluxessentials.service.AnimeLoader;
 import com.academy.springwebfluxessentials.service.AnimeService;
+import com.academy.springwebfluxessentials.service.AnimeTransferService;
+import com.academy.springwebfluxessentials.service.AnimeWriteBehind;
 import com.academy.springwebfluxessentials.util.AnimeCreator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import org.junit.jupiter.api.*;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentMatchers;
@@ -12,29 +29,43 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.transaction.reactive.TransactionalOperator;
 import org.springframework.web.reactive.function.BodyInserters;
 import reactor.blockhound.BlockHound;
 import reactor.blockhound.BlockingOperationError;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
 
+import java.time.Instant;
+import java.util.List;
+import java.util.function.BiFunction;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
 
 @ExtendWith(SpringExtension.class)
 @WebFluxTest
-@Import(AnimeService.class)
+@Import({AnimeService.class, AnimeBulkService.class, AnimeTransferService.class, AnimeCache.class, AnimeLoader.class, AnimeProperties.class, AnimeWriteBehind.class,
+        AnimeChangeFeed.class})
 class AnimeControllerIT {
     @MockBean
     private AnimeRepository animeRepositoryMock;
 
+    @MockBean
+    private TransactionalOperator transactionalOperatorMock;
+
     @Autowired
     private WebTestClient testClient;
 
+    @Autowired
+    private AnimeCache animeCache;
+
     private final Anime anime = AnimeCreator.createValidAnime();
 
     @BeforeAll
@@ -60,17 +91,58 @@ class AnimeControllerIT {
 
     @BeforeEach
     void setUp() {
-        BDDMockito.when(animeRepositoryMock.findAll())
+        animeCache.invalidateAll();
+
+        BDDMockito.when(animeRepositoryMock.findCatalogVersion())
+                .thenReturn(Mono.just(new AnimeCatalogVersion(7, Instant.parse("2020-07-01T10:00:00Z"))));
+
+        BDDMockito.when(animeRepositoryMock.streamAll(ArgumentMatchers.anyInt()))
                 .thenReturn(Flux.just(anime));
 
-        BDDMockito.when(animeRepositoryMock.findById(ArgumentMatchers.anyInt()))
-                .thenReturn(Mono.just(anime));
+        BDDMockito.when(animeRepositoryMock.findPage(ArgumentMatchers.anyInt(), ArgumentMatchers.anyInt()))
+                .thenReturn(Flux.just(anime));
+
+        BDDMockito.when(animeRepositoryMock.findAllByIds(ArgumentMatchers.any(Integer[].class)))
+                .thenReturn(Flux.just(anime));
+
+        BDDMockito.when(animeRepositoryMock.search(ArgumentMatchers.anyString(), ArgumentMatchers.anyString(), ArgumentMatchers.anyInt()))
+                .thenReturn(Flux.just(anime));
 
         BDDMockito.when(animeRepositoryMock.save(ArgumentMatchers.any(Anime.class)))
                 .thenReturn(Mono.just(anime));
 
-        BDDMockito.when(animeRepositoryMock.delete(ArgumentMatchers.any(Anime.class)))
+        BDDMockito.when(animeRepositoryMock.updateName(ArgumentMatchers.anyInt(), ArgumentMatchers.anyString()))
+                .thenReturn(Mono.just(1));
+
+        BDDMockito.when(animeRepositoryMock.removeById(ArgumentMatchers.anyInt()))
+                .thenReturn(Mono.just(1));
+
+        BDDMockito.when(animeRepositoryMock.updateNameIfVersion(ArgumentMatchers.anyInt(), ArgumentMatchers.anyString(), ArgumentMatchers.anyLong()))
+                .thenReturn(Mono.just(1));
+
+        BDDMockito.when(animeRepositoryMock.existsById(ArgumentMatchers.anyInt()))
+                .thenReturn(Mono.just(true));
+
+        BDDMockito.when(animeRepositoryMock.removeAllByIds(ArgumentMatchers.any(Integer[].class)))
+                .thenReturn(Flux.just(1));
+
+        BDDMockito.when(animeRepositoryMock.streamRows(ArgumentMatchers.anyInt(), ArgumentMatchers.any()))
+                .thenAnswer(invocation -> Flux.just(invocation.<BiFunction<Integer, String, Object>>getArgument(1).apply(anime.getId(), anime.getName())));
+
+        BDDMockito.when(animeRepositoryMock.upsertAll(ArgumentMatchers.any(Integer[].class), ArgumentMatchers.any(String[].class)))
+                .thenReturn(Mono.just(1));
+
+        BDDMockito.when(animeRepositoryMock.insertNames(ArgumentMatchers.any(String[].class)))
+                .thenReturn(Flux.just(2));
+
+        BDDMockito.when(animeRepositoryMock.syncIdSequence())
                 .thenReturn(Mono.empty());
+
+        BDDMockito.when(transactionalOperatorMock.transactional(ArgumentMatchers.any(Flux.class)))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+
+        BDDMockito.when(transactionalOperatorMock.transactional(ArgumentMatchers.any(Mono.class)))
+                .thenAnswer(invocation -> invocation.getArgument(0));
     }
 
     @Test
@@ -89,6 +161,232 @@ class AnimeControllerIT {
                 .contains(anime);
     }
 
+    @Test
+    @DisplayName("List all answers json to clients that accept anything")
+    void list_3() {
+        testClient
+                .get()
+                .uri("/animes")
+                .accept(MediaType.ALL)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .contentTypeCompatibleWith(MediaType.APPLICATION_JSON)
+                .expectBodyList(Anime.class)
+                .hasSize(1)
+                .contains(anime);
+    }
+
+    @Test
+    @DisplayName("Errors are answered in json to clients that accept anything")
+    void findById_6() {
+        BDDMockito.when(animeRepositoryMock.findAllByIds(ArgumentMatchers.any(Integer[].class)))
+                .thenReturn(Flux.empty());
+
+        testClient
+                .get()
+                .uri("/animes/{id}", 404)
+                .accept(MediaType.ALL)
+                .exchange()
+                .expectStatus()
+                .isNotFound()
+                .expectHeader()
+                .contentTypeCompatibleWith(MediaType.APPLICATION_JSON);
+    }
+
+    @Test
+    @DisplayName("List all returns not modified without reading the catalog when the version matches")
+    void list_2() {
+        testClient
+                .get()
+                .uri("/animes")
+                .ifNoneMatch("W/\"7\"")
+                .exchange()
+                .expectStatus()
+                .isNotModified()
+                .expectBody()
+                .isEmpty();
+
+        BDDMockito.verify(animeRepositoryMock, BDDMockito.never()).streamAll(ArgumentMatchers.anyInt());
+    }
+
+    @Test
+    @DisplayName("List all streams one json document per line when ndjson is accepted")
+    void list_ndjson() {
+        testClient
+                .get()
+                .uri("/animes")
+                .accept(WebFluxConfig.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .contentTypeCompatibleWith(WebFluxConfig.APPLICATION_NDJSON)
+                .expectBody(String.class)
+                .isEqualTo("{\"id\":1,\"name\":\"Naruto  Uzumaki\"}\n");
+    }
+
+    @Test
+    @DisplayName("List all returns cbor when it is accepted")
+    void list_cbor() throws Exception {
+        var body = testClient
+                .get()
+                .uri("/animes")
+                .accept(MediaType.APPLICATION_CBOR)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .contentTypeCompatibleWith(MediaType.APPLICATION_CBOR)
+                .expectBody(byte[].class)
+                .returnResult()
+                .getResponseBody();
+
+        Assertions.assertArrayEquals(new Anime[]{anime}, new ObjectMapper(new CBORFactory()).readValue(body, Anime[].class));
+    }
+
+    @Test
+    @DisplayName("Find by ID returns smile when it is accepted")
+    void findById_smile() throws Exception {
+        var body = testClient
+                .get()
+                .uri("/animes/{id}", 1)
+                .accept(MediaType.parseMediaType(WebFluxConfig.APPLICATION_SMILE_VALUE))
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(byte[].class)
+                .returnResult()
+                .getResponseBody();
+
+        Assertions.assertEquals(anime, new ObjectMapper(new SmileFactory()).readValue(body, Anime.class));
+    }
+
+    @Test
+    @DisplayName("List all streams server sent events when event stream is accepted")
+    void list_sse() {
+        var body = testClient
+                .get()
+                .uri("/animes")
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .returnResult(Anime.class)
+                .getResponseBody();
+
+        StepVerifier.create(body)
+                .expectNext(anime)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("List with limit returns a page of anime")
+    void listPage() {
+        testClient
+                .get()
+                .uri("/animes?limit={limit}", 10)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(AnimePage.class)
+                .isEqualTo(new AnimePage(List.of(anime), null));
+    }
+
+    @Test
+    @DisplayName("List with limit returns not modified without running the page query when the version matches")
+    void listPage_2() {
+        testClient
+                .get()
+                .uri("/animes?limit={limit}", 10)
+                .ifNoneMatch("W/\"7\"")
+                .exchange()
+                .expectStatus()
+                .isNotModified()
+                .expectHeader()
+                .valueEquals(HttpHeaders.ETAG, "W/\"7\"");
+
+        BDDMockito.verify(animeRepositoryMock, BDDMockito.never()).findPage(ArgumentMatchers.anyInt(), ArgumentMatchers.anyInt());
+    }
+
+    @Test
+    @DisplayName("List after a cursor without limit returns a page of the default size instead of the whole catalog")
+    void listPage_3() {
+        testClient
+                .get()
+                .uri("/animes?after={after}", 1)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(AnimePage.class)
+                .isEqualTo(new AnimePage(List.of(anime), null));
+
+        BDDMockito.verify(animeRepositoryMock).findPage(1, 101);
+        BDDMockito.verify(animeRepositoryMock, BDDMockito.never()).streamAll(ArgumentMatchers.anyInt());
+    }
+
+    @Test
+    @DisplayName("Search returns the matching anime")
+    void search() {
+        testClient
+                .get()
+                .uri("/animes/search?q={q}&limit={limit}", "naru", 5)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBodyList(Anime.class)
+                .hasSize(1)
+                .contains(anime);
+
+        BDDMockito.verify(animeRepositoryMock).search("naru%", "naru", 5);
+    }
+
+    @Test
+    @DisplayName("Multi-get returns the found animes and the missing ids")
+    void findAllById() {
+        testClient
+                .get()
+                .uri("/animes?ids={ids}", "1,2")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(AnimeMultiGet.class)
+                .isEqualTo(new AnimeMultiGet(List.of(anime), List.of(2)));
+
+        BDDMockito.verify(animeRepositoryMock).findAllByIds(new Integer[]{1, 2});
+    }
+
+    @Test
+    @DisplayName("Multi-get takes long id lists in the request body")
+    void findAllById_2() {
+        testClient
+                .post()
+                .uri("/animes/lookup")
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(BodyInserters.fromValue(List.of(1, 2)))
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody()
+                .jsonPath("$.content[0].id").isEqualTo(1)
+                .jsonPath("$.missing[0]").isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Search returns an error when the query is missing")
+    void search_2() {
+        testClient
+                .get()
+                .uri("/animes/search")
+                .exchange()
+                .expectStatus()
+                .isBadRequest()
+                .expectBody()
+                .jsonPath("$.status")
+                .isEqualTo(400);
+    }
+
     @Test
     @DisplayName("Find by ID returns a mono with anime, when exists")
     void findById() {
@@ -102,11 +400,42 @@ class AnimeControllerIT {
                 .isEqualTo(anime);
     }
 
+    @Test
+    @DisplayName("Find by ID reports its phases in Server-Timing when asked to")
+    void findById_5() {
+        testClient
+                .get()
+                .uri("/animes/{id}", 1)
+                .header("X-Server-Timing", "true")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .value("Server-Timing", value -> Assertions.assertTrue(value.matches("(.+, )?lookup;dur=.+, total;dur=.+"), value));
+    }
+
+    @Test
+    @DisplayName("Find by ID returns not modified when the version matches")
+    void findById_3() {
+        BDDMockito.when(animeRepositoryMock.findAllByIds(ArgumentMatchers.any(Integer[].class)))
+                .thenReturn(Flux.just(anime.withVersion(3L)));
+
+        testClient
+                .get()
+                .uri("/animes/{id}", 1)
+                .ifNoneMatch("\"3\"")
+                .exchange()
+                .expectStatus()
+                .isNotModified()
+                .expectHeader()
+                .valueEquals("ETag", "\"3\"");
+    }
+
     @Test
     @DisplayName("Find by ID returns a error when anime doest not exist")
     void findById_2() {
-        BDDMockito.when(animeRepositoryMock.findById(ArgumentMatchers.anyInt()))
-                .thenReturn(Mono.empty());
+        BDDMockito.when(animeRepositoryMock.findAllByIds(ArgumentMatchers.any(Integer[].class)))
+                .thenReturn(Flux.empty());
 
         testClient
                 .get()
@@ -116,7 +445,38 @@ class AnimeControllerIT {
                 .isNotFound()
                 .expectBody()
                 .jsonPath("$.status")
-                .isEqualTo(404);
+                .isEqualTo(404)
+                .jsonPath("$.error")
+                .isEqualTo("Not Found")
+                .jsonPath("$.message")
+                .isEqualTo("404 NOT_FOUND \"Anime not found\"")
+                .jsonPath("$.path")
+                .isEqualTo("/animes/1")
+                .jsonPath("$.developerMessage")
+                .isEqualTo("Respect my history, a response status exception happened")
+                .jsonPath("$.timestamp")
+                .exists()
+                .jsonPath("$.requestId")
+                .exists();
+    }
+
+    @Test
+    @DisplayName("Find by ID includes the stack trace of a not found error only when trace is requested")
+    void findById_4() {
+        BDDMockito.when(animeRepositoryMock.findAllByIds(ArgumentMatchers.any(Integer[].class)))
+                .thenReturn(Flux.empty());
+
+        testClient
+                .get()
+                .uri("/animes/{id}?trace=true", 1)
+                .exchange()
+                .expectStatus()
+                .isNotFound()
+                .expectBody()
+                .jsonPath("$.status")
+                .isEqualTo(404)
+                .jsonPath("$.trace")
+                .exists();
     }
 
     @Test
@@ -168,8 +528,8 @@ class AnimeControllerIT {
     @Test
     @DisplayName("delete return mono error when anime does not exist")
     void delete_2() {
-        BDDMockito.when(animeRepositoryMock.findById(ArgumentMatchers.anyInt()))
-                .thenReturn(Mono.empty());
+        BDDMockito.when(animeRepositoryMock.removeById(ArgumentMatchers.anyInt()))
+                .thenReturn(Mono.just(0));
 
         testClient
                 .delete()
@@ -182,12 +542,154 @@ class AnimeControllerIT {
                 .isEqualTo(404);
     }
 
+    @Test
+    @DisplayName("bulk returns one result per operation")
+    void bulk() {
+        var operations = List.of(new AnimeOperation(AnimeOperation.Type.DELETE, 1, null));
+
+        testClient
+                .post()
+                .uri("/animes/bulk")
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(BodyInserters.fromValue(operations))
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBodyList(AnimeOperationResult.class)
+                .hasSize(1)
+                .contains(new AnimeOperationResult(0, AnimeOperation.Type.DELETE, 1, 204));
+    }
+
+    @Test
+    @DisplayName("bulk returns an error when an operation is invalid")
+    void bulk_2() {
+        var operations = List.of(new AnimeOperation(AnimeOperation.Type.CREATE, null, Anime.builder().name("").build()));
+
+        testClient
+                .post()
+                .uri("/animes/bulk")
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(BodyInserters.fromValue(operations))
+                .exchange()
+                .expectStatus()
+                .isBadRequest()
+                .expectBody()
+                .jsonPath("$.status")
+                .isEqualTo(400);
+    }
+
+    @Test
+    @DisplayName("export writes the catalog as csv by default")
+    void export() {
+        testClient
+                .get()
+                .uri("/animes/export")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .contentTypeCompatibleWith(WebFluxConfig.TEXT_CSV)
+                .expectBody(String.class)
+                .isEqualTo("id,name\n1,Naruto  Uzumaki\n");
+    }
+
+    @Test
+    @DisplayName("export writes the catalog as ndjson when it is accepted")
+    void export_2() {
+        testClient
+                .get()
+                .uri("/animes/export")
+                .accept(WebFluxConfig.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .contentTypeCompatibleWith(WebFluxConfig.APPLICATION_NDJSON)
+                .expectBody(String.class)
+                .isEqualTo("{\"id\":1,\"name\":\"Naruto  Uzumaki\"}\n");
+    }
+
+    @Test
+    @DisplayName("import loads csv rows with and without id")
+    void importAnimes() {
+        testClient
+                .post()
+                .uri("/animes/import")
+                .contentType(WebFluxConfig.TEXT_CSV)
+                .body(BodyInserters.fromValue("id,name\n1,Naruto  Uzumaki\n,\"Bleach, the movie\"\n"))
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(AnimeImportResult.class)
+                .isEqualTo(new AnimeImportResult(2));
+
+        BDDMockito.verify(animeRepositoryMock).upsertAll(new Integer[]{1}, new String[]{"Naruto  Uzumaki"});
+        BDDMockito.verify(animeRepositoryMock).insertNames(new String[]{"Bleach, the movie"});
+    }
+
+    @Test
+    @DisplayName("import returns an error when a line is invalid")
+    void importAnimes_2() {
+        testClient
+                .post()
+                .uri("/animes/import")
+                .contentType(WebFluxConfig.TEXT_CSV)
+                .body(BodyInserters.fromValue("id,name\nabc,Naruto\n"))
+                .exchange()
+                .expectStatus()
+                .isBadRequest()
+                .expectBody()
+                .jsonPath("$.status")
+                .isEqualTo(400);
+    }
+
+    @Test
+    @DisplayName("import reads quoted csv names that span lines, as export writes them")
+    void importAnimes_3() {
+        testClient
+                .post()
+                .uri("/animes/import")
+                .contentType(WebFluxConfig.TEXT_CSV)
+                .body(BodyInserters.fromValue("id,name\r\n1,\"Naruto\r\nShippuden\"\r\n,\"Bleach\n\"\"the movie\"\"\"\n"))
+                .exchange()
+                .expectStatus()
+                .isOk();
+
+        BDDMockito.verify(animeRepositoryMock).upsertAll(new Integer[]{1}, new String[]{"Naruto\r\nShippuden"});
+        BDDMockito.verify(animeRepositoryMock).insertNames(new String[]{"Bleach\n\"the movie\""});
+    }
+
+    @Test
+    @DisplayName("import upserts an id listed twice once, with its last name")
+    void importAnimes_4() {
+        testClient
+                .post()
+                .uri("/animes/import")
+                .contentType(WebFluxConfig.TEXT_CSV)
+                .body(BodyInserters.fromValue("1,Naruto\n2,Bleach\n1,Naruto Shippuden\n"))
+                .exchange()
+                .expectStatus()
+                .isOk();
+
+        BDDMockito.verify(animeRepositoryMock).upsertAll(new Integer[]{1, 2}, new String[]{"Naruto Shippuden", "Bleach"});
+    }
+
+    @Test
+    @DisplayName("import returns an error when a quoted name is never closed")
+    void importAnimes_5() {
+        testClient
+                .post()
+                .uri("/animes/import")
+                .contentType(WebFluxConfig.TEXT_CSV)
+                .body(BodyInserters.fromValue("1,\"Naruto\n"))
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+    }
+
     @Test
     @DisplayName("update an anime and returns empty mono when successful")
     void update() {
-        BDDMockito.when(animeRepositoryMock.save(ArgumentMatchers.any(Anime.class)))
-                .thenReturn(Mono.empty());
-
         testClient
                 .put()
                 .uri("/animes/{id}", 1)
@@ -201,8 +703,8 @@ class AnimeControllerIT {
     @Test
     @DisplayName("update returns mono error when anime does not exist")
     void update_2() {
-        BDDMockito.when(animeRepositoryMock.findById(ArgumentMatchers.anyInt()))
-                .thenReturn(Mono.empty());
+        BDDMockito.when(animeRepositoryMock.updateName(ArgumentMatchers.anyInt(), ArgumentMatchers.anyString()))
+                .thenReturn(Mono.just(0));
 
         testClient
                 .put()
@@ -214,4 +716,45 @@ class AnimeControllerIT {
                 .jsonPath("$.status")
                 .isEqualTo(400);
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("update returns not found when no row was updated")
+    void update_3() {
+        BDDMockito.when(animeRepositoryMock.updateName(ArgumentMatchers.anyInt(), ArgumentMatchers.anyString()))
+                .thenReturn(Mono.just(0));
+
+        testClient
+                .put()
+                .uri("/animes/{id}", 1)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(BodyInserters.fromValue(anime))
+                .exchange()
+                .expectStatus()
+                .isNotFound()
+                .expectBody()
+                .jsonPath("$.status")
+                .isEqualTo(404);
+    }
+
+    @Test
+    @DisplayName("update returns conflict when If-Match does not match the current version")
+    void update_4() {
+        BDDMockito.when(animeRepositoryMock.updateNameIfVersion(ArgumentMatchers.anyInt(), ArgumentMatchers.anyString(), ArgumentMatchers.anyLong()))
+                .thenReturn(Mono.just(0));
+
+        testClient
+                .put()
+                .uri("/animes/{id}", 1)
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.IF_MATCH, "\"2\"")
+                .body(BodyInserters.fromValue(anime))
+                .exchange()
+                .expectStatus()
+                .isEqualTo(HttpStatus.CONFLICT)
+                .expectBody()
+                .jsonPath("$.status")
+                .isEqualTo(409);
+
+        BDDMockito.verify(animeRepositoryMock).updateNameIfVersion(1, anime.getName(), 2L);
+    }
+}
@@ -0,0 +1,78 @@
+package com.academy.springwebfluxessentials.metrics;
+
+import com.academy.springwebfluxessentials.config.AnimeProperties;
+import com.academy.springwebfluxessentials.domain.Anime;
+import com.academy.springwebfluxessentials.repository.AnimeRepository;
+import com.academy.springwebfluxessentials.util.AnimeCreator;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentMatchers;
+import org.mockito.BDDMockito;
+import org.mockito.Mock;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+@ExtendWith(SpringExtension.class)
+class RepositoryMetricsInterceptorTest {
+    @Mock
+    private AnimeRepository animeRepositoryMock;
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+
+    private final Anime anime = AnimeCreator.createValidAnime();
+
+    private AnimeRepository repository;
+
+    @BeforeEach
+    void setUp() {
+        var beans = new DefaultListableBeanFactory();
+        beans.registerSingleton("registry", registry);
+        beans.registerSingleton("properties", new AnimeProperties());
+        var factory = new ProxyFactory();
+        factory.setTarget(animeRepositoryMock);
+        factory.addInterface(AnimeRepository.class);
+        factory.addAdvice(new RepositoryMetricsInterceptor(beans.getBeanProvider(MeterRegistry.class), beans.getBeanProvider(AnimeProperties.class)));
+        repository = (AnimeRepository) factory.getProxy();
+    }
+
+    @Test
+    @DisplayName("Repository calls are timed per method and outcome")
+    void invoke() {
+        BDDMockito.when(animeRepositoryMock.findById(ArgumentMatchers.anyInt()))
+                .thenReturn(Mono.just(anime));
+        BDDMockito.when(animeRepositoryMock.removeById(ArgumentMatchers.anyInt()))
+                .thenReturn(Mono.error(new IllegalStateException()));
+
+        StepVerifier.create(repository.findById(1))
+                .expectNext(anime)
+                .verifyComplete();
+        StepVerifier.create(repository.removeById(1))
+                .expectError(IllegalStateException.class)
+                .verify();
+
+        Assertions.assertEquals(1, registry.get("anime.repository.queries").tags("method", "findById", "outcome", "success").timer().count());
+        Assertions.assertEquals(1, registry.get("anime.repository.queries").tags("method", "removeById", "outcome", "error").timer().count());
+    }
+
+    @Test
+    @DisplayName("Calls made on behalf of a request are charged to its db phase")
+    void invoke_2() {
+        BDDMockito.when(animeRepositoryMock.findById(ArgumentMatchers.anyInt()))
+                .thenReturn(Mono.just(anime));
+        var timing = new ServerTiming();
+
+        StepVerifier.create(repository.findById(1).subscriberContext(timing::putIn))
+                .expectNext(anime)
+                .verifyComplete();
+
+        Assertions.assertTrue(timing.phases().containsKey("db"));
+    }
+}
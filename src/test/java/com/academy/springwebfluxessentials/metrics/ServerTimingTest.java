@@ -0,0 +1,52 @@
+package com.academy.springwebfluxessentials.metrics;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+class ServerTimingTest {
+
+    @Test
+    @DisplayName("The header lists the recorded phases in milliseconds, then the total")
+    void header() {
+        var timing = new ServerTiming();
+        timing.record("pool", 250_000);
+        timing.record("db", 1_000_000);
+        timing.record("db", 500_000);
+
+        Assertions.assertTrue(timing.header().matches("db;dur=1\\.50, pool;dur=0\\.25, total;dur=\\d+\\.\\d{2}"), timing.header());
+    }
+
+    @Test
+    @DisplayName("Timed publishers are charged to the timing in their subscriber's context, if there is one")
+    void timed() {
+        var timing = new ServerTiming();
+
+        StepVerifier.create(ServerTiming.timed("lookup", Mono.just(1)).subscriberContext(timing::putIn))
+                .expectNext(1)
+                .verifyComplete();
+        StepVerifier.create(ServerTiming.timed("lookup", Mono.just(1)))
+                .expectNext(1)
+                .verifyComplete();
+
+        Assertions.assertEquals(1, timing.phases().size());
+        Assertions.assertTrue(timing.phases().containsKey("lookup"));
+    }
+
+    @Test
+    @DisplayName("A phase is charged at its first signal, before the header is committed with the first buffer")
+    void timed_2() {
+        var timing = new ServerTiming();
+
+        StepVerifier.create(ServerTiming.timed("db", Flux.just(1).concatWith(Flux.never())).subscriberContext(timing::putIn))
+                .expectNext(1)
+                .then(() -> Assertions.assertTrue(timing.phases().containsKey("db")))
+                .thenCancel()
+                .verify();
+
+        Assertions.assertEquals(1, timing.phases().size());
+    }
+}
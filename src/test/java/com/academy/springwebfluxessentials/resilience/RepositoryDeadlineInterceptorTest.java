@@ -0,0 +1,172 @@
+package com.academy.springwebfluxessentials.resilience;
+
+import com.academy.springwebfluxessentials.config.AnimeProperties;
+import com.academy.springwebfluxessentials.domain.Anime;
+import com.academy.springwebfluxessentials.exception.StacklessResponseStatusException;
+import com.academy.springwebfluxessentials.repository.AnimeRepository;
+import com.academy.springwebfluxessentials.util.AnimeCreator;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentMatchers;
+import org.mockito.BDDMockito;
+import org.mockito.Mock;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@ExtendWith(SpringExtension.class)
+class RepositoryDeadlineInterceptorTest {
+    @Mock
+    private AnimeRepository animeRepositoryMock;
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+
+    private final AnimeProperties properties = new AnimeProperties();
+
+    private final Anime anime = AnimeCreator.createValidAnime();
+
+    private AnimeRepository repository;
+
+    // the timeouts and hedge delays run on the shared parallel scheduler, later tests get fresh threads
+    @AfterAll
+    static void tearDownSchedulers() {
+        Schedulers.shutdownNow();
+    }
+
+    @BeforeEach
+    void setUp() {
+        properties.getDeadlines().setDefaultTimeout(Duration.ofMillis(200));
+        properties.getHedging().setMinSamples(64);
+        var beans = new DefaultListableBeanFactory();
+        beans.registerSingleton("registry", registry);
+        beans.registerSingleton("properties", properties);
+        var factory = new ProxyFactory();
+        factory.setTarget(animeRepositoryMock);
+        factory.addInterface(AnimeRepository.class);
+        factory.addAdvice(new RepositoryDeadlineInterceptor(beans.getBeanProvider(MeterRegistry.class), beans.getBeanProvider(AnimeProperties.class)));
+        repository = (AnimeRepository) factory.getProxy();
+    }
+
+    @Test
+    @DisplayName("A call that misses its deadline fails with 504")
+    void invoke() {
+        BDDMockito.when(animeRepositoryMock.findById(ArgumentMatchers.anyInt()))
+                .thenReturn(Mono.never());
+
+        StepVerifier.create(repository.findById(1))
+                .expectErrorSatisfies(error -> Assertions.assertEquals(HttpStatus.GATEWAY_TIMEOUT, ((StacklessResponseStatusException) error).getStatus()))
+                .verify(Duration.ofSeconds(5));
+
+        Assertions.assertEquals(1, registry.get("anime.repository.deadlines").tags("method", "findById", "event", "timeout").counter().count());
+    }
+
+    @Test
+    @DisplayName("The deadline covers the whole stream, not just the first row")
+    void invoke_2() {
+        BDDMockito.when(animeRepositoryMock.findAllByIds(ArgumentMatchers.any()))
+                .thenReturn(Flux.just(anime).concatWith(Flux.never()));
+
+        StepVerifier.create(repository.findAllByIds(new Integer[]{1}))
+                .expectNext(anime)
+                .expectError(StacklessResponseStatusException.class)
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    @DisplayName("A read slower than usual is hedged and the faster attempt wins")
+    void invoke_3() {
+        var subscriptions = new AtomicInteger();
+        BDDMockito.when(animeRepositoryMock.findById(ArgumentMatchers.anyInt()))
+                .thenReturn(Mono.defer(() -> subscriptions.getAndIncrement() == 64 ? Mono.<Anime>never() : Mono.just(anime)));
+
+        for (int i = 0; i < 64; i++) {
+            repository.findById(1).block();
+        }
+        StepVerifier.create(repository.findById(1))
+                .expectNext(anime)
+                .verifyComplete();
+
+        Assertions.assertEquals(1, registry.get("anime.repository.deadlines").tags("method", "findById", "event", "sent").counter().count());
+        Assertions.assertEquals(1, registry.get("anime.repository.deadlines").tags("method", "findById", "event", "won").counter().count());
+    }
+
+    @Test
+    @DisplayName("Without budget left no hedge is sent")
+    void invoke_4() {
+        properties.getHedging().setBudgetRatio(0);
+        var subscriptions = new AtomicInteger();
+        BDDMockito.when(animeRepositoryMock.findById(ArgumentMatchers.anyInt()))
+                .thenReturn(Mono.defer(() -> subscriptions.getAndIncrement() == 64 ? Mono.<Anime>never() : Mono.just(anime)));
+
+        for (int i = 0; i < 64; i++) {
+            repository.findById(1).block();
+        }
+        StepVerifier.create(repository.findById(1))
+                .expectError(StacklessResponseStatusException.class)
+                .verify(Duration.ofSeconds(5));
+
+        Assertions.assertNull(registry.find("anime.repository.deadlines").tags("event", "sent").counter());
+    }
+
+    @Test
+    @DisplayName("A primary that fails before answering leaves the race to a running hedge")
+    void invoke_6() {
+        var subscriptions = new AtomicInteger();
+        BDDMockito.when(animeRepositoryMock.findById(ArgumentMatchers.anyInt()))
+                .thenReturn(Mono.defer(() -> {
+                    var attempt = subscriptions.getAndIncrement();
+                    if (attempt == 64) {
+                        return Mono.delay(Duration.ofMillis(50)).then(Mono.<Anime>error(new IllegalStateException()));
+                    }
+                    return attempt == 65 ? Mono.delay(Duration.ofMillis(100)).thenReturn(anime) : Mono.just(anime);
+                }));
+
+        for (int i = 0; i < 64; i++) {
+            repository.findById(1).block();
+        }
+        StepVerifier.create(repository.findById(1))
+                .expectNext(anime)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("Writes run without the default deadline")
+    void invoke_7() {
+        BDDMockito.when(animeRepositoryMock.removeById(ArgumentMatchers.anyInt()))
+                .thenReturn(Mono.never());
+
+        StepVerifier.create(repository.removeById(1))
+                .expectSubscription()
+                .expectNoEvent(Duration.ofMillis(400))
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    @DisplayName("Writes are never hedged")
+    void invoke_5() {
+        var subscriptions = new AtomicInteger();
+        BDDMockito.when(animeRepositoryMock.removeById(ArgumentMatchers.anyInt()))
+                .thenReturn(Mono.defer(() -> Mono.just(subscriptions.incrementAndGet())));
+
+        for (int i = 0; i < 100; i++) {
+            repository.removeById(1).block();
+        }
+
+        Assertions.assertEquals(100, subscriptions.get());
+    }
+}
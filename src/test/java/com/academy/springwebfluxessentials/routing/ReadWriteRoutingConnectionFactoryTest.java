@@ -0,0 +1,90 @@
+package com.academy.springwebfluxessentials.routing;
+
+import com.academy.springwebfluxessentials.config.AnimeProperties;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.BDDMockito;
+import org.mockito.Mock;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+@ExtendWith(SpringExtension.class)
+class ReadWriteRoutingConnectionFactoryTest {
+    private ReadWriteRoutingConnectionFactory factory;
+    private VirtualTimeScheduler scheduler;
+    @Mock
+    private ConnectionFactory primaryMock;
+    @Mock
+    private ConnectionFactory replicaMock;
+    @Mock
+    private Connection primaryConnection;
+    @Mock
+    private Connection replicaConnection;
+
+    private final AnimeProperties properties = new AnimeProperties();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        BDDMockito.doReturn(Mono.just(primaryConnection)).when(primaryMock).create();
+        BDDMockito.doReturn(Mono.just(replicaConnection)).when(replicaMock).create();
+
+        // health checks run on virtual time, the tests report the replica status themselves
+        scheduler = VirtualTimeScheduler.create();
+        factory = new ReadWriteRoutingConnectionFactory(primaryMock, replicaMock, properties.getReplica(), scheduler);
+        factory.afterPropertiesSet();
+        factory.replicaStatus(0.5);
+    }
+
+    @AfterEach
+    void tearDown() {
+        factory.dispose();
+        scheduler.dispose();
+    }
+
+    @Test
+    @DisplayName("Reads that prefer the replica get a replica connection")
+    void create() {
+        StepVerifier.create(factory.create().subscriberContext(ReadPreference.REPLICA::putIfAbsent))
+                .expectNext(replicaConnection)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("Everything without a read preference goes to the primary")
+    void create_2() {
+        StepVerifier.create(factory.create())
+                .expectNext(primaryConnection)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("A request pinned to the primary stays there even if the service prefers the replica")
+    void create_3() {
+        StepVerifier.create(factory.create()
+                .subscriberContext(ReadPreference.REPLICA::putIfAbsent)
+                .subscriberContext(ReadPreference.PRIMARY::putIfAbsent))
+                .expectNext(primaryConnection)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("Reads fall back to the primary while the replica lags or is unreachable")
+    void create_4() {
+        factory.replicaStatus(properties.getReplica().getMaxLag().toSeconds() + 1.0);
+        StepVerifier.create(factory.create().subscriberContext(ReadPreference.REPLICA::putIfAbsent))
+                .expectNext(primaryConnection)
+                .verifyComplete();
+
+        factory.replicaStatus(null);
+        StepVerifier.create(factory.create().subscriberContext(ReadPreference.REPLICA::putIfAbsent))
+                .expectNext(primaryConnection)
+                .verifyComplete();
+    }
+}
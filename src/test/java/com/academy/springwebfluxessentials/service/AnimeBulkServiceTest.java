@@ -0,0 +1,138 @@
+package com.academy.springwebfluxessentials.service;
+
+import com.academy.springwebfluxessentials.config.AnimeProperties;
+import com.academy.springwebfluxessentials.domain.Anime;
+import com.academy.springwebfluxessentials.domain.AnimeOperation;
+import com.academy.springwebfluxessentials.domain.AnimeOperationResult;
+import com.academy.springwebfluxessentials.repository.AnimeRepository;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentMatchers;
+import org.mockito.BDDMockito;
+import org.mockito.Mock;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.blockhound.BlockHound;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@ExtendWith(SpringExtension.class)
+class AnimeBulkServiceTest {
+    private AnimeBulkService bulkService;
+    @Mock
+    private AnimeRepository animeRepositoryMock;
+    @Mock
+    private TransactionalOperator transactionalOperatorMock;
+    @Mock
+    private ApplicationEventPublisher eventPublisherMock;
+
+    private final AnimeProperties properties = new AnimeProperties();
+    private final AtomicBoolean committed = new AtomicBoolean();
+
+    @BeforeAll
+    public static void blockHoundSetUp() {
+        BlockHound.install();
+    }
+
+    @BeforeEach
+    void setUp() {
+        bulkService = new AnimeBulkService(animeRepositoryMock, properties, new AnimeCache(properties), transactionalOperatorMock, eventPublisherMock);
+
+        BDDMockito.when(transactionalOperatorMock.transactional(ArgumentMatchers.any(Mono.class)))
+                .thenAnswer(invocation -> invocation.<Mono<?>>getArgument(0).doOnSuccess(results -> committed.set(true)));
+
+        BDDMockito.when(animeRepositoryMock.insertNames(ArgumentMatchers.any(String[].class)))
+                .thenReturn(Flux.just(10, 11));
+
+        BDDMockito.when(animeRepositoryMock.updateNames(ArgumentMatchers.any(Integer[].class), ArgumentMatchers.any(String[].class)))
+                .thenReturn(Flux.just(1));
+
+        BDDMockito.when(animeRepositoryMock.removeAllByIds(ArgumentMatchers.any(Integer[].class)))
+                .thenReturn(Flux.just(2));
+    }
+
+    @Test
+    @DisplayName("execute runs consecutive operations of the same type as one statement and reports each one")
+    void execute() {
+        var operations = Flux.just(
+                new AnimeOperation(AnimeOperation.Type.CREATE, null, Anime.builder().name("Bleach").build()),
+                new AnimeOperation(AnimeOperation.Type.CREATE, null, Anime.builder().name("Berserk").build()),
+                new AnimeOperation(AnimeOperation.Type.UPDATE, 1, Anime.builder().name("Naruto Shippuden").build()),
+                new AnimeOperation(AnimeOperation.Type.DELETE, 2, null),
+                new AnimeOperation(AnimeOperation.Type.DELETE, 3, null));
+
+        StepVerifier.create(bulkService.execute(operations))
+                .expectSubscription()
+                .expectNext(new AnimeOperationResult(0, AnimeOperation.Type.CREATE, 10, 201))
+                .expectNext(new AnimeOperationResult(1, AnimeOperation.Type.CREATE, 11, 201))
+                .expectNext(new AnimeOperationResult(2, AnimeOperation.Type.UPDATE, 1, 204))
+                .expectNext(new AnimeOperationResult(3, AnimeOperation.Type.DELETE, 2, 204))
+                .expectNext(new AnimeOperationResult(4, AnimeOperation.Type.DELETE, 3, 404))
+                .verifyComplete();
+
+        BDDMockito.verify(animeRepositoryMock).insertNames(new String[]{"Bleach", "Berserk"});
+        BDDMockito.verify(animeRepositoryMock).updateNames(new Integer[]{1}, new String[]{"Naruto Shippuden"});
+        BDDMockito.verify(animeRepositoryMock).removeAllByIds(new Integer[]{2, 3});
+        BDDMockito.verify(eventPublisherMock).publishEvent(AnimeChangedEvent.of(Set.of(10, 11, 1, 2, 3)));
+    }
+
+    @Test
+    @DisplayName("execute splits a run when the same id shows up twice")
+    void execute_2() {
+        var operations = Flux.just(
+                new AnimeOperation(AnimeOperation.Type.DELETE, 2, null),
+                new AnimeOperation(AnimeOperation.Type.DELETE, 2, null));
+
+        BDDMockito.when(animeRepositoryMock.removeAllByIds(ArgumentMatchers.any(Integer[].class)))
+                .thenReturn(Flux.just(2), Flux.empty());
+
+        StepVerifier.create(bulkService.execute(operations))
+                .expectSubscription()
+                .expectNext(new AnimeOperationResult(0, AnimeOperation.Type.DELETE, 2, 204))
+                .expectNext(new AnimeOperationResult(1, AnimeOperation.Type.DELETE, 2, 404))
+                .verifyComplete();
+
+        BDDMockito.verify(animeRepositoryMock, BDDMockito.times(2)).removeAllByIds(new Integer[]{2});
+    }
+
+    @Test
+    @DisplayName("execute emits no result before the transaction committed")
+    void execute_3() {
+        var operations = Flux.just(
+                new AnimeOperation(AnimeOperation.Type.CREATE, null, Anime.builder().name("Bleach").build()),
+                new AnimeOperation(AnimeOperation.Type.DELETE, 2, null));
+
+        StepVerifier.create(bulkService.execute(operations))
+                .expectSubscription()
+                .assertNext(result -> Assertions.assertTrue(committed.get()))
+                .assertNext(result -> Assertions.assertTrue(committed.get()))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("execute emits no result when the transaction rolls back")
+    void execute_4() {
+        var operations = Flux.just(
+                new AnimeOperation(AnimeOperation.Type.CREATE, null, Anime.builder().name("Bleach").build()),
+                new AnimeOperation(AnimeOperation.Type.DELETE, 2, null));
+
+        BDDMockito.when(animeRepositoryMock.removeAllByIds(ArgumentMatchers.any(Integer[].class)))
+                .thenReturn(Flux.error(new IllegalStateException("connection lost")));
+
+        StepVerifier.create(bulkService.execute(operations))
+                .expectSubscription()
+                .expectError(IllegalStateException.class)
+                .verify();
+
+        BDDMockito.verifyNoInteractions(eventPublisherMock);
+    }
+}
@@ -0,0 +1,41 @@
+package com.academy.springwebfluxessentials.service;
+
+import com.academy.springwebfluxessentials.config.AnimeProperties;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+class AnimeChangeFeedTest {
+    private final AnimeProperties properties = new AnimeProperties();
+
+    @Test
+    @DisplayName("Without LISTEN the feed carries this node's own changes")
+    void onChanged() {
+        properties.getChanges().setListen(false);
+        var feed = new AnimeChangeFeed(properties);
+
+        StepVerifier.create(feed.changes())
+                .expectSubscription()
+                .then(() -> feed.onChanged(AnimeChangedEvent.of(1)))
+                .expectNext(AnimeChangedEvent.of(1))
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    @DisplayName("While listening only notifications reach the feed, so a node's own writes are not sent twice")
+    void onChanged_2() {
+        var feed = new AnimeChangeFeed(properties);
+
+        StepVerifier.create(feed.changes())
+                .expectSubscription()
+                .then(() -> feed.onChanged(AnimeChangedEvent.of(1)))
+                .expectNoEvent(Duration.ofMillis(100))
+                .then(() -> feed.emit(AnimeChangedEvent.of(2)))
+                .expectNext(AnimeChangedEvent.of(2))
+                .thenCancel()
+                .verify();
+    }
+}
@@ -0,0 +1,136 @@
+package com.academy.springwebfluxessentials.service;
+
+import com.academy.springwebfluxessentials.config.AnimeProperties;
+import com.academy.springwebfluxessentials.domain.Anime;
+import com.academy.springwebfluxessentials.repository.AnimeRepository;
+import com.academy.springwebfluxessentials.util.AnimeCreator;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentMatchers;
+import org.mockito.BDDMockito;
+import org.mockito.Mock;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import reactor.blockhound.BlockHound;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+@ExtendWith(SpringExtension.class)
+class AnimeLoaderTest {
+    private AnimeLoader loader;
+    @Mock
+    private AnimeRepository animeRepositoryMock;
+
+    private final AnimeProperties properties = new AnimeProperties();
+
+    private final Anime anime = AnimeCreator.createValidAnime();
+
+    @BeforeAll
+    public static void blockHoundSetUp() {
+        BlockHound.install();
+    }
+
+    @BeforeEach
+    void setUp() {
+        loader = new AnimeLoader(animeRepositoryMock, properties);
+
+        BDDMockito.when(animeRepositoryMock.findAllByIds(ArgumentMatchers.any(Integer[].class)))
+                .thenReturn(Flux.just(anime).delayElements(Duration.ofMillis(100)));
+
+        BDDMockito.when(animeRepositoryMock.findById(ArgumentMatchers.anyInt()))
+                .thenReturn(Mono.just(anime));
+    }
+
+    @Test
+    @DisplayName("load shares one query between concurrent callers of the same id")
+    void load() {
+        StepVerifier.create(Mono.zip(loader.load(1), loader.load(1)))
+                .expectSubscription()
+                .assertNext(tuple -> {
+                    Assertions.assertEquals(anime, tuple.getT1());
+                    Assertions.assertEquals(anime, tuple.getT2());
+                })
+                .verifyComplete();
+
+        BDDMockito.verify(animeRepositoryMock, BDDMockito.times(1)).findAllByIds(new Integer[]{1});
+    }
+
+    @Test
+    @DisplayName("load runs a new query once the previous one finished")
+    void load_2() {
+        StepVerifier.create(loader.load(1).then(loader.load(1)))
+                .expectSubscription()
+                .expectNext(anime)
+                .verifyComplete();
+
+        BDDMockito.verify(animeRepositoryMock, BDDMockito.times(2)).findAllByIds(new Integer[]{1});
+    }
+
+    @Test
+    @DisplayName("load propagates an empty result to every concurrent caller")
+    void load_3() {
+        BDDMockito.when(animeRepositoryMock.findAllByIds(ArgumentMatchers.any(Integer[].class)))
+                .thenReturn(Flux.<Anime>empty().delaySubscription(Duration.ofMillis(100)));
+
+        StepVerifier.create(Mono.zip(loader.load(1).hasElement(), loader.load(1).hasElement()))
+                .expectSubscription()
+                .assertNext(tuple -> {
+                    Assertions.assertFalse(tuple.getT1());
+                    Assertions.assertFalse(tuple.getT2());
+                })
+                .verifyComplete();
+
+        BDDMockito.verify(animeRepositoryMock, BDDMockito.times(1)).findAllByIds(new Integer[]{1});
+    }
+
+    @Test
+    @DisplayName("load batches lookups of different ids into one query and fans the rows back out")
+    void load_4() {
+        // wide enough that a slow machine subscribes all three lookups before the window closes
+        properties.getBatch().setWindow(Duration.ofMillis(200));
+        var other = AnimeCreator.createValidUpdatedAnime().withId(2);
+        BDDMockito.when(animeRepositoryMock.findAllByIds(ArgumentMatchers.any(Integer[].class)))
+                .thenReturn(Flux.just(other, anime));
+
+        StepVerifier.create(Mono.zip(loader.load(1), loader.load(2), loader.load(3).hasElement()))
+                .expectSubscription()
+                .assertNext(tuple -> {
+                    Assertions.assertEquals(anime, tuple.getT1());
+                    Assertions.assertEquals(other, tuple.getT2());
+                    Assertions.assertFalse(tuple.getT3());
+                })
+                .verifyComplete();
+
+        BDDMockito.verify(animeRepositoryMock, BDDMockito.times(1)).findAllByIds(new Integer[]{1, 2, 3});
+    }
+
+    @Test
+    @DisplayName("load goes straight to findById when batching is disabled")
+    void load_5() {
+        properties.getBatch().setEnabled(false);
+
+        StepVerifier.create(loader.load(1))
+                .expectSubscription()
+                .expectNext(anime)
+                .verifyComplete();
+
+        BDDMockito.verify(animeRepositoryMock, BDDMockito.never()).findAllByIds(ArgumentMatchers.any(Integer[].class));
+    }
+
+    @Test
+    @DisplayName("load does not share a query that started before a write with callers arriving after it")
+    void load_6() {
+        var afterWrite = Mono.delay(Duration.ofMillis(50))
+                .doOnNext(tick -> loader.onChanged(AnimeChangedEvent.of(1)))
+                .then(loader.load(1));
+
+        StepVerifier.create(Mono.zip(loader.load(1), afterWrite))
+                .expectSubscription()
+                .expectNextCount(1)
+                .verifyComplete();
+
+        BDDMockito.verify(animeRepositoryMock, BDDMockito.times(2)).findAllByIds(new Integer[]{1});
+    }
+}
@@ -1,14 +1,18 @@
 package com.academy.springwebfluxessentials.service;
 
+import com.academy.springwebfluxessentials.config.AnimeProperties;
 import com.academy.springwebfluxessentials.domain.Anime;
+import com.academy.springwebfluxessentials.domain.AnimeMultiGet;
+import com.academy.springwebfluxessentials.domain.AnimePage;
 import com.academy.springwebfluxessentials.repository.AnimeRepository;
 import com.academy.springwebfluxessentials.util.AnimeCreator;
 import org.junit.jupiter.api.*;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentMatchers;
 import org.mockito.BDDMockito;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.HttpStatus;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.web.server.ResponseStatusException;
 import reactor.blockhound.BlockHound;
@@ -18,15 +22,19 @@ import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
 import reactor.test.StepVerifier;
 
+import java.util.List;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
 
 @ExtendWith(SpringExtension.class)
 class AnimeServiceTest {
-    @InjectMocks
     private AnimeService animeService;
     @Mock
     private AnimeRepository animeRepositoryMock;
+    @Mock
+    private ApplicationEventPublisher eventPublisherMock;
+
+    private final AnimeProperties properties = new AnimeProperties();
 
     private final Anime anime = AnimeCreator.createValidAnime();
 
@@ -53,17 +61,32 @@ class AnimeServiceTest {
 
     @BeforeEach
     void setUp() {
-        BDDMockito.when(animeRepositoryMock.findAll())
+        animeService = new AnimeService(animeRepositoryMock, properties, new AnimeCache(properties), new AnimeLoader(animeRepositoryMock, properties), eventPublisherMock,
+                new AnimeWriteBehind(animeRepositoryMock, properties, new AnimeCache(properties), eventPublisherMock));
+
+        BDDMockito.when(animeRepositoryMock.streamAll(ArgumentMatchers.anyInt()))
                 .thenReturn(Flux.just(anime));
 
-        BDDMockito.when(animeRepositoryMock.findById(ArgumentMatchers.anyInt()))
-                .thenReturn(Mono.just(anime));
+        BDDMockito.when(animeRepositoryMock.findPage(ArgumentMatchers.anyInt(), ArgumentMatchers.anyInt()))
+                .thenReturn(Flux.just(anime));
+
+        BDDMockito.when(animeRepositoryMock.findAllByIds(ArgumentMatchers.any(Integer[].class)))
+                .thenReturn(Flux.just(anime));
 
         BDDMockito.when(animeRepositoryMock.save(ArgumentMatchers.any(Anime.class)))
                 .thenReturn(Mono.just(anime));
 
-        BDDMockito.when(animeRepositoryMock.delete(ArgumentMatchers.any(Anime.class)))
-                .thenReturn(Mono.empty());
+        BDDMockito.when(animeRepositoryMock.updateName(ArgumentMatchers.anyInt(), ArgumentMatchers.anyString()))
+                .thenReturn(Mono.just(1));
+
+        BDDMockito.when(animeRepositoryMock.removeById(ArgumentMatchers.anyInt()))
+                .thenReturn(Mono.just(1));
+
+        BDDMockito.when(animeRepositoryMock.updateNameIfVersion(ArgumentMatchers.anyInt(), ArgumentMatchers.anyString(), ArgumentMatchers.anyLong()))
+                .thenReturn(Mono.just(1));
+
+        BDDMockito.when(animeRepositoryMock.existsById(ArgumentMatchers.anyInt()))
+                .thenReturn(Mono.just(true));
     }
 
     @Test
@@ -75,6 +98,74 @@ class AnimeServiceTest {
                 .verifyComplete();
     }
 
+    @Test
+    @DisplayName("Find page returns the animes without a next cursor on the last page")
+    void findPage() {
+        StepVerifier.create(animeService.findPage(null, 10))
+                .expectSubscription()
+                .expectNext(new AnimePage(List.of(anime), null))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("Find page returns the id of the last anime as next cursor when more rows exist")
+    void findPage_2() {
+        var next = AnimeCreator.createValidUpdatedAnime().withId(2);
+        BDDMockito.when(animeRepositoryMock.findPage(ArgumentMatchers.anyInt(), ArgumentMatchers.anyInt()))
+                .thenReturn(Flux.just(anime, next));
+
+        StepVerifier.create(animeService.findPage(null, 1))
+                .expectSubscription()
+                .expectNext(new AnimePage(List.of(anime), anime.getId()))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("Search matches the lower cased term as a literal prefix")
+    void search() {
+        BDDMockito.when(animeRepositoryMock.search(ArgumentMatchers.anyString(), ArgumentMatchers.anyString(), ArgumentMatchers.anyInt()))
+                .thenReturn(Flux.just(anime));
+
+        StepVerifier.create(animeService.search(" Naru_%to ", 1000))
+                .expectSubscription()
+                .expectNext(anime)
+                .verifyComplete();
+
+        BDDMockito.verify(animeRepositoryMock).search("naru\\_\\%to%", "Naru_%to", properties.getSearch().getMaxLimit());
+    }
+
+    @Test
+    @DisplayName("Search returns an error when the query is blank")
+    void search_2() {
+        StepVerifier.create(animeService.search(" ", null))
+                .expectSubscription()
+                .expectError(ResponseStatusException.class)
+                .verify();
+    }
+
+    @Test
+    @DisplayName("Multi-get answers in request order and lists the missing ids")
+    void findAllById() {
+        BDDMockito.when(animeRepositoryMock.findAllByIds(ArgumentMatchers.any(Integer[].class)))
+                .thenReturn(Flux.just(anime.withId(3).withName("Bleach"), anime));
+
+        StepVerifier.create(animeService.findAllById(List.of(1, 2, 3, 1)))
+                .expectSubscription()
+                .expectNext(new AnimeMultiGet(List.of(anime, anime.withId(3).withName("Bleach")), List.of(2)))
+                .verifyComplete();
+
+        BDDMockito.verify(animeRepositoryMock).findAllByIds(new Integer[]{1, 2, 3});
+    }
+
+    @Test
+    @DisplayName("Multi-get returns an error when no id is given")
+    void findAllById_2() {
+        StepVerifier.create(animeService.findAllById(List.of()))
+                .expectSubscription()
+                .expectError(ResponseStatusException.class)
+                .verify();
+    }
+
     @Test
     @DisplayName("Find by ID returns a mono with anime, when exists")
     void findById() {
@@ -87,8 +178,8 @@ class AnimeServiceTest {
     @Test
     @DisplayName("Find by ID returns a error when anime doest not exist")
     void findById_2() {
-        BDDMockito.when(animeRepositoryMock.findById(ArgumentMatchers.anyInt()))
-                .thenReturn(Mono.empty());
+        BDDMockito.when(animeRepositoryMock.findAllByIds(ArgumentMatchers.any(Integer[].class)))
+                .thenReturn(Flux.empty());
 
         StepVerifier.create(animeService.findById(1))
                 .expectSubscription()
@@ -96,6 +187,31 @@ class AnimeServiceTest {
                 .verify();
     }
 
+    @Test
+    @DisplayName("Find by ID serves repeated lookups from the cache")
+    void findById_3() {
+        StepVerifier.create(animeService.findById(1).then(animeService.findById(1)))
+                .expectSubscription()
+                .expectNext(anime)
+                .verifyComplete();
+
+        BDDMockito.verify(animeRepositoryMock, BDDMockito.times(1)).findAllByIds(ArgumentMatchers.any(Integer[].class));
+    }
+
+    @Test
+    @DisplayName("Find by ID caches the not found answer")
+    void findById_4() {
+        BDDMockito.when(animeRepositoryMock.findAllByIds(ArgumentMatchers.any(Integer[].class)))
+                .thenReturn(Flux.empty());
+
+        StepVerifier.create(animeService.findById(1).onErrorResume(e -> animeService.findById(1)))
+                .expectSubscription()
+                .expectError(ResponseStatusException.class)
+                .verify();
+
+        BDDMockito.verify(animeRepositoryMock, BDDMockito.times(1)).findAllByIds(ArgumentMatchers.any(Integer[].class));
+    }
+
     @Test
     @DisplayName("save an anime when successful")
     void save() {
@@ -113,40 +229,80 @@ class AnimeServiceTest {
         StepVerifier.create(animeService.delete(1))
                 .expectSubscription()
                 .verifyComplete();
+
+        BDDMockito.verify(eventPublisherMock).publishEvent(AnimeChangedEvent.of(1));
     }
 
     @Test
     @DisplayName("delete return mono error when anime does not exist")
     void delete_2() {
-        BDDMockito.when(animeRepositoryMock.findById(ArgumentMatchers.anyInt()))
-                .thenReturn(Mono.empty());
+        BDDMockito.when(animeRepositoryMock.removeById(ArgumentMatchers.anyInt()))
+                .thenReturn(Mono.just(0));
 
         StepVerifier.create(animeService.delete(1))
                 .expectSubscription()
                 .expectError(ResponseStatusException.class)
                 .verify();
+
+        BDDMockito.verify(eventPublisherMock, BDDMockito.never()).publishEvent(ArgumentMatchers.any(Object.class));
     }
 
     @Test
     @DisplayName("update an anime and returns empty mono when successful")
     void update() {
-        BDDMockito.when(animeRepositoryMock.save(ArgumentMatchers.any(Anime.class)))
-                .thenReturn(Mono.empty());
-
         StepVerifier.create(animeService.update(AnimeCreator.createValidAnime()))
                 .expectSubscription()
                 .verifyComplete();
     }
 
+    @Test
+    @DisplayName("update evicts the anime from the cache")
+    void update_3() {
+        StepVerifier.create(animeService.findById(1)
+                        .then(animeService.update(AnimeCreator.createValidAnime()))
+                        .then(animeService.findById(1)))
+                .expectSubscription()
+                .expectNext(anime)
+                .verifyComplete();
+
+        BDDMockito.verify(animeRepositoryMock, BDDMockito.times(2)).findAllByIds(ArgumentMatchers.any(Integer[].class));
+    }
+
     @Test
     @DisplayName("update returns mono error when anime does not exist")
     void update_2() {
-        BDDMockito.when(animeRepositoryMock.findById(ArgumentMatchers.anyInt()))
-                .thenReturn(Mono.empty());
+        BDDMockito.when(animeRepositoryMock.updateName(ArgumentMatchers.anyInt(), ArgumentMatchers.anyString()))
+                .thenReturn(Mono.just(0));
 
         StepVerifier.create(animeService.update(AnimeCreator.createValidAnime()))
                 .expectSubscription()
                 .expectError(ResponseStatusException.class)
                 .verify();
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("update with a version only writes when the version still matches")
+    void update_4() {
+        StepVerifier.create(animeService.update(AnimeCreator.createValidAnime().withVersion(3L)))
+                .expectSubscription()
+                .verifyComplete();
+
+        BDDMockito.verify(animeRepositoryMock).updateNameIfVersion(1, anime.getName(), 3L);
+        BDDMockito.verify(animeRepositoryMock, BDDMockito.never()).updateName(ArgumentMatchers.anyInt(), ArgumentMatchers.anyString());
+    }
+
+    @Test
+    @DisplayName("update returns conflict when the version is stale")
+    void update_5() {
+        BDDMockito.when(animeRepositoryMock.updateNameIfVersion(ArgumentMatchers.anyInt(), ArgumentMatchers.anyString(), ArgumentMatchers.anyLong()))
+                .thenReturn(Mono.just(0));
+
+        StepVerifier.create(animeService.update(AnimeCreator.createValidAnime().withVersion(3L)))
+                .expectSubscription()
+                .expectErrorMatches(e -> e instanceof ResponseStatusException
+                        && ((ResponseStatusException) e).getStatus() == HttpStatus.CONFLICT)
+                .verify();
+
+        BDDMockito.verify(eventPublisherMock, BDDMockito.never()).publishEvent(ArgumentMatchers.any(Object.class));
+    }
+}
@@ -0,0 +1,89 @@
+package com.academy.springwebfluxessentials.service;
+
+import com.academy.springwebfluxessentials.config.AnimeProperties;
+import com.academy.springwebfluxessentials.domain.Anime;
+import com.academy.springwebfluxessentials.domain.AnimeCatalogVersion;
+import com.academy.springwebfluxessentials.repository.AnimeRepository;
+import com.academy.springwebfluxessentials.util.AnimeCreator;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentMatchers;
+import org.mockito.BDDMockito;
+import org.mockito.Mock;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import reactor.blockhound.BlockHound;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Set;
+
+@ExtendWith(SpringExtension.class)
+class AnimeSnapshotTest {
+    private AnimeSnapshot snapshot;
+    @Mock
+    private AnimeRepository animeRepositoryMock;
+
+    private final AnimeProperties properties = new AnimeProperties();
+
+    private final Anime anime = AnimeCreator.createValidAnime();
+
+    @BeforeAll
+    public static void blockHoundSetUp() {
+        BlockHound.install();
+    }
+
+    @BeforeEach
+    void setUp() {
+        properties.getSnapshot().setRebuildDelay(Duration.ZERO);
+        snapshot = new AnimeSnapshot(animeRepositoryMock, properties, Jackson2ObjectMapperBuilder.json().build());
+
+        BDDMockito.when(animeRepositoryMock.findCatalogVersion())
+                .thenReturn(Mono.just(new AnimeCatalogVersion(7, Instant.parse("2020-07-01T10:00:00Z"))));
+
+        BDDMockito.when(animeRepositoryMock.streamAll(ArgumentMatchers.anyInt()))
+                .thenReturn(Flux.just(anime, anime.withId(2).withName("Bleach")));
+    }
+
+    @Test
+    @DisplayName("The snapshot holds the catalog encoded as a json array")
+    void onReady() {
+        snapshot.onReady();
+
+        var current = awaitSnapshot();
+        Assertions.assertEquals(7, current.getVersion());
+        Assertions.assertEquals("[{\"id\":1,\"name\":\"Naruto  Uzumaki\"},{\"id\":2,\"name\":\"Bleach\"}]", json(current));
+        Assertions.assertNotNull(current.getGzip());
+    }
+
+    @Test
+    @DisplayName("A change reloads only the rows it touched")
+    void onChanged() {
+        BDDMockito.when(animeRepositoryMock.findAllByIds(ArgumentMatchers.any(Integer[].class)))
+                .thenReturn(Flux.just(anime.withName("Naruto Shippuden")));
+
+        snapshot.onReady();
+        awaitSnapshot();
+        snapshot.onChanged(AnimeChangedEvent.of(Set.of(1, 2)));
+
+        Assertions.assertEquals("[{\"id\":1,\"name\":\"Naruto Shippuden\"}]", json(awaitSnapshot()));
+        BDDMockito.verify(animeRepositoryMock, BDDMockito.times(1)).streamAll(ArgumentMatchers.anyInt());
+    }
+
+    private AnimeSnapshot.Snapshot awaitSnapshot() {
+        return Mono.fromSupplier(snapshot::current)
+                .repeatWhenEmpty(100, attempts -> attempts.delayElements(Duration.ofMillis(10)))
+                .block(Duration.ofSeconds(5));
+    }
+
+    private static String json(AnimeSnapshot.Snapshot snapshot) {
+        return StandardCharsets.UTF_8.decode(snapshot.getJson().duplicate()).toString();
+    }
+}
@@ -0,0 +1,109 @@
+package com.academy.springwebfluxessentials.service;
+
+import com.academy.springwebfluxessentials.config.AnimeProperties;
+import com.academy.springwebfluxessentials.domain.Anime;
+import com.academy.springwebfluxessentials.repository.AnimeRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentMatchers;
+import org.mockito.BDDMockito;
+import org.mockito.Mock;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.blockhound.BlockHound;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+import java.time.Duration;
+import java.util.Set;
+
+@ExtendWith(SpringExtension.class)
+class AnimeWriteBehindTest {
+    private AnimeWriteBehind writeBehind;
+    private VirtualTimeScheduler scheduler;
+    @Mock
+    private AnimeRepository animeRepositoryMock;
+    @Mock
+    private ApplicationEventPublisher eventPublisherMock;
+
+    private final AnimeProperties properties = new AnimeProperties();
+
+    @BeforeAll
+    public static void blockHoundSetUp() {
+        BlockHound.install();
+    }
+
+    @BeforeEach
+    void setUp() {
+        var config = properties.getWriteBehind();
+        config.setEnabled(true);
+        config.setCapacity(2);
+        config.setMaxBatchSize(2);
+        // the ticker runs on virtual time, so only the size trigger and the shutdown drain flush during these tests
+        config.setFlushInterval(Duration.ofHours(1));
+        scheduler = VirtualTimeScheduler.create();
+        writeBehind = new AnimeWriteBehind(animeRepositoryMock, properties, new AnimeCache(properties), eventPublisherMock, scheduler);
+
+        BDDMockito.when(animeRepositoryMock.insertNames(ArgumentMatchers.any(String[].class)))
+                .thenReturn(Flux.just(1, 2));
+    }
+
+    @AfterEach
+    void tearDown() {
+        writeBehind.destroy();
+        scheduler.dispose();
+    }
+
+    @Test
+    @DisplayName("A full batch is written as one insert and each caller gets its id back")
+    void insert() {
+        StepVerifier.create(Flux.merge(writeBehind.insert(new Anime(null, "Naruto", null, null), true),
+                writeBehind.insert(new Anime(null, "Bleach", null, null), true)))
+                .expectSubscription()
+                .expectNext(new Anime(1, "Naruto", 0L, null))
+                .expectNext(new Anime(2, "Bleach", 0L, null))
+                .verifyComplete();
+
+        BDDMockito.verify(animeRepositoryMock, BDDMockito.times(1)).insertNames(new String[]{"Naruto", "Bleach"});
+        BDDMockito.verify(eventPublisherMock).publishEvent(AnimeChangedEvent.of(Set.of(1, 2)));
+    }
+
+    @Test
+    @DisplayName("Inserts are refused with 429 while the buffer is full")
+    void insert_2() {
+        writeBehind.destroy();
+        properties.getWriteBehind().setCapacity(1);
+        writeBehind = new AnimeWriteBehind(animeRepositoryMock, properties, new AnimeCache(properties), eventPublisherMock, scheduler);
+
+        StepVerifier.create(writeBehind.insert(new Anime(null, "Naruto", null, null), false))
+                .expectSubscription()
+                .expectNextCount(1)
+                .verifyComplete();
+
+        StepVerifier.create(writeBehind.insert(new Anime(null, "Bleach", null, null), false))
+                .expectSubscription()
+                .expectErrorMatches(error -> error instanceof ResponseStatusException
+                        && ((ResponseStatusException) error).getStatus() == HttpStatus.TOO_MANY_REQUESTS)
+                .verify();
+    }
+
+    @Test
+    @DisplayName("Shutting down writes out what is still queued")
+    void destroy() {
+        StepVerifier.create(writeBehind.insert(new Anime(null, "Naruto", null, null), false))
+                .expectSubscription()
+                .expectNextCount(1)
+                .verifyComplete();
+
+        writeBehind.destroy();
+
+        BDDMockito.verify(animeRepositoryMock, BDDMockito.times(1)).insertNames(new String[]{"Naruto"});
+    }
+}